@@ -0,0 +1,129 @@
+package org.cis120.minesweeper;
+
+
+/**
+ * BenchmarkBoards sets up the games the benchmarks run on. Every game is generated from the same
+ * seed, so each benchmark sees the same boards from run to run and results can be compared
+ * between builds.
+ *
+ * Board sizes are given as "WIDTHxHEIGHT" and densities as the fraction of tiles holding a bomb,
+ * as taken by the benchmarks' size and density parameters.
+ */
+final class BenchmarkBoards {
+
+    static final long SEED = 120;
+
+    private BenchmarkBoards() {
+    }
+
+    /**
+     * @return number of columns in a "WIDTHxHEIGHT" board size
+     */
+    static int width(String size) {
+        return Integer.parseInt(size.substring(0, size.indexOf('x')));
+    }
+
+    /**
+     * @return number of rows in a "WIDTHxHEIGHT" board size
+     */
+    static int height(String size) {
+        return Integer.parseInt(size.substring(size.indexOf('x') + 1));
+    }
+
+    /**
+     * Makes a new game with saving turned off. The first reveal opens up the tiles around it, so
+     * opening the board from the centre always clears an area.
+     *
+     * @param size board size, "WIDTHxHEIGHT"
+     * @param density fraction of tiles holding a bomb
+     * @return the game, with nothing revealed yet
+     */
+    static Minesweeper newGame(String size, double density) {
+        int width = width(size);
+        int height = height(size);
+        int numMines = Math.max(1, (int) Math.round(width * height * density));
+        Minesweeper ms = new Minesweeper(width, height, numMines, SEED);
+        ms.setSafeOpening(true);
+        ms.resetWithSeed(SEED);
+        return ms;
+    }
+
+    /**
+     * Opens the board by revealing its centre tile.
+     *
+     * @param ms game to open, with nothing revealed yet
+     */
+    static void open(Minesweeper ms) {
+        ms.playTurn(ms.getWidth() / 2, ms.getHeight() / 2, true);
+    }
+
+    /**
+     * Finds a hidden tile without a bomb that has bombs around it, so revealing it reveals just
+     * that tile.
+     *
+     * @param ms game to search
+     * @return index of the tile, or -1 if there isn't one
+     */
+    static int hiddenNumberTile(Minesweeper ms) {
+        int width = ms.getWidth();
+        for (int i = 0; i < width * ms.getHeight(); i++) {
+            int x = i % width;
+            int y = i / width;
+            if (ms.getCell(x, y) == Minesweeper.HIDDEN && !ms.isBomb(x, y) &&
+                    bombsAround(ms, x, y) > 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Plays moves on a new game until it has the given number of moves, without ending the game.
+     * Opens the board, then mixes reveals of safe tiles with flagging and un-flagging a bomb,
+     * leaving one safe tile hidden so the game is never won. Once there are no more safe tiles to
+     * reveal, the rest of the moves are flag toggles.
+     *
+     * @param ms game to play, with nothing revealed yet
+     * @param count number of moves the game should have
+     */
+    static void playMoves(Minesweeper ms, int count) {
+        int width = ms.getWidth();
+        int n = width * ms.getHeight();
+        int bomb = 0;
+        while (!ms.isBomb(bomb % width, bomb / width)) {
+            bomb++;
+        }
+        open(ms);
+        int next = 0; // tiles before next have been revealed, or are bombs
+        while (ms.getMoveCount() < count) {
+            if (ms.getState() != 0) { // the opening cleared the whole board
+                throw new IllegalStateException("Game ended after " + ms.getMoveCount() +
+                        " moves");
+            }
+            while (next < n && (ms.getCell(next % width, next / width) != Minesweeper.HIDDEN ||
+                    ms.isBomb(next % width, next / width))) {
+                next++;
+            }
+            if (ms.getMoveCount() % 3 != 0 && next < n && ms.getSafeTilesLeft() > 1) {
+                ms.playTurn(next % width, next / width, true);
+            } else {
+                ms.playTurn(bomb % width, bomb / width, false);
+            }
+        }
+    }
+
+    /**
+     * @return number of bombs around tile (x, y)
+     */
+    private static int bombsAround(Minesweeper ms, int x, int y) {
+        int count = 0;
+        for (int ny = Math.max(0, y - 1); ny <= Math.min(ms.getHeight() - 1, y + 1); ny++) {
+            for (int nx = Math.max(0, x - 1); nx <= Math.min(ms.getWidth() - 1, x + 1); nx++) {
+                if (ms.isBomb(nx, ny)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+}
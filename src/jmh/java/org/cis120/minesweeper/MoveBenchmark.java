@@ -0,0 +1,137 @@
+package org.cis120.minesweeper;
+
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * MoveBenchmark measures playing moves with Minesweeper.playTurn, and updateState.
+ *
+ * Reveals change the board for good, so the reveal benchmarks get a fresh board before every
+ * call (Level.Invocation). Flag toggles are cheap enough that setting up a board for each one
+ * would swamp them, so they're timed in batches of FLAG_BATCH per fresh board instead.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveBenchmark {
+
+    static final int FLAG_BATCH = 1024;
+
+    /**
+     * Board with nothing revealed yet, for timing the first reveal.
+     */
+    @State(Scope.Thread)
+    public static class NewBoard {
+        @Param({"16x16", "30x16", "100x100"})
+        public String size;
+
+        @Param({"0.1", "0.2"})
+        public double density;
+
+        Minesweeper ms;
+
+        @Setup(Level.Trial)
+        public void create() {
+            ms = BenchmarkBoards.newGame(size, density);
+        }
+
+        @Setup(Level.Invocation)
+        public void reset() {
+            ms.resetWithSeed(BenchmarkBoards.SEED);
+        }
+    }
+
+    /**
+     * Board that has been opened, with a hidden number tile to reveal.
+     */
+    @State(Scope.Thread)
+    public static class OpenBoard {
+        @Param({"16x16", "30x16", "100x100"})
+        public String size;
+
+        @Param({"0.1", "0.2"})
+        public double density;
+
+        Minesweeper ms;
+        int x; // hidden tile with bombs around it
+        int y;
+
+        @Setup(Level.Trial)
+        public void create() {
+            ms = BenchmarkBoards.newGame(size, density);
+            reset();
+            int i = BenchmarkBoards.hiddenNumberTile(ms);
+            x = i % ms.getWidth();
+            y = i / ms.getWidth();
+        }
+
+        @Setup(Level.Invocation)
+        public void reset() {
+            ms.resetWithSeed(BenchmarkBoards.SEED);
+            BenchmarkBoards.open(ms);
+        }
+    }
+
+    /**
+     * Game partway through, left as it is between calls.
+     */
+    @State(Scope.Thread)
+    public static class PlayedBoard {
+        @Param({"16x16", "30x16", "100x100"})
+        public String size;
+
+        @Param({"0.1", "0.2"})
+        public double density;
+
+        Minesweeper ms;
+
+        @Setup(Level.Trial)
+        public void create() {
+            ms = BenchmarkBoards.newGame(size, density);
+            BenchmarkBoards.playMoves(ms, 100);
+        }
+    }
+
+    /**
+     * Reveals a single number tile, which doesn't flood.
+     */
+    @Benchmark
+    public boolean singleReveal(OpenBoard b) {
+        return b.ms.playTurn(b.x, b.y, true);
+    }
+
+    /**
+     * Makes the first reveal of a game, which opens up an area of the board.
+     */
+    @Benchmark
+    public boolean largeOpening(NewBoard b) {
+        return b.ms.playTurn(b.ms.getWidth() / 2, b.ms.getHeight() / 2, true);
+    }
+
+    /**
+     * Flags and un-flags a hidden tile, one move per call counted.
+     */
+    @Benchmark
+    @OperationsPerInvocation(FLAG_BATCH)
+    public boolean flagToggle(OpenBoard b) {
+        boolean ok = true;
+        for (int k = 0; k < FLAG_BATCH; k++) {
+            ok &= b.ms.playTurn(b.x, b.y, false);
+        }
+        return ok;
+    }
+
+    /**
+     * Works out the game state after a move.
+     */
+    @Benchmark
+    public int updateState(PlayedBoard b) {
+        b.ms.updateState();
+        return b.ms.getState();
+    }
+}
@@ -0,0 +1,113 @@
+package org.cis120.minesweeper;
+
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * PaintBenchmark measures GameBoard.paintComponent drawing a whole board into an offscreen
+ * BufferedImage, with no window, at the default tile size. Boards too big for the renderer's back
+ * buffer (100x100 at 32 px a tile) are drawn straight from the tile atlas.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class PaintBenchmark {
+
+    static final int MOVES = 200;
+
+    @Param({"16x16", "30x16", "100x100"})
+    public String size;
+
+    @Param({"0.1", "0.2"})
+    public double density;
+
+    private Minesweeper ms;
+    private GameBoard board;
+    private BufferedImage image;
+    private Graphics2D g;
+    private int flagX; // a hidden tile to flag
+    private int flagY;
+
+    @Setup(Level.Trial)
+    public void create() {
+        ms = BenchmarkBoards.newGame(size, density);
+        board = new GameBoard(ms);
+        board.setSize(board.getPreferredSize());
+        image = new BufferedImage(board.getWidth(), board.getHeight(),
+                BufferedImage.TYPE_INT_RGB);
+        g = image.createGraphics();
+        g.setClip(0, 0, board.getWidth(), board.getHeight());
+    }
+
+    @TearDown(Level.Trial)
+    public void dispose() {
+        g.dispose();
+    }
+
+    @Setup(Level.Iteration)
+    public void play() {
+        ms.resetWithSeed(BenchmarkBoards.SEED); // paintAfterFlag adds moves, start over
+        BenchmarkBoards.playMoves(ms, MOVES);
+        int i = BenchmarkBoards.hiddenNumberTile(ms);
+        flagX = i % ms.getWidth();
+        flagY = i / ms.getWidth();
+        board.paintComponent(g); // draw the back buffer
+    }
+
+    /**
+     * Paints a board that hasn't changed since the last paint.
+     */
+    @Benchmark
+    public BufferedImage paintUnchanged() {
+        board.paintComponent(g);
+        return image;
+    }
+
+    /**
+     * Flags or un-flags a tile, then paints.
+     */
+    @Benchmark
+    public BufferedImage paintAfterFlag() {
+        ms.playTurn(flagX, flagY, false);
+        board.paintComponent(g);
+        return image;
+    }
+
+    /**
+     * Jumps the replay between the first and last moves, which changes the whole board, then
+     * paints.
+     */
+    @Benchmark
+    public BufferedImage paintFull(FullRedraw f) {
+        f.atEnd = !f.atEnd;
+        ms.replaySeek(f.atEnd ? MOVES : 0);
+        board.paintComponent(g);
+        return image;
+    }
+
+    /**
+     * Puts the game into a replay with a checkpoint after every move, so every jump restores a
+     * checkpoint and changes the whole board.
+     */
+    @State(Scope.Thread)
+    public static class FullRedraw {
+        boolean atEnd; // whether the replay is at the last move
+
+        @Setup(Level.Iteration)
+        public void startReplay(PaintBenchmark p) {
+            p.ms.reset(true);
+            p.ms.setReplayCheckpointInterval(1);
+            p.ms.startReplay();
+            p.ms.replaySeek(MOVES); // take the checkpoints
+            atEnd = true;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.cis120.minesweeper;
+
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * ReplayBenchmark measures replaying a game of MOVES moves the way GameBoard.replay does: hiding
+ * the board, then stepping forward one move at a time to the end. The replay checkpoints are
+ * taken on the first replay and reused after that, as they are when a game is replayed again.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReplayBenchmark {
+
+    static final int MOVES = 1000;
+
+    @Param({"16x16", "30x16", "100x100"})
+    public String size;
+
+    @Param({"0.1", "0.2"})
+    public double density;
+
+    private Minesweeper ms;
+
+    @Setup(Level.Trial)
+    public void create() {
+        ms = BenchmarkBoards.newGame(size, density);
+        BenchmarkBoards.playMoves(ms, MOVES);
+        ms.reset(true); // start the replay from a hidden board
+    }
+
+    /**
+     * Replays every move of the game, one step at a time.
+     */
+    @Benchmark
+    public int replay() {
+        ms.reset(true);
+        ms.startReplay();
+        while (ms.replayStepForward()) {
+            // step to the end
+        }
+        ms.finishReplay();
+        return ms.getState();
+    }
+
+    /**
+     * Jumps from the start of the replay to the end, and back.
+     */
+    @Benchmark
+    public int seek() {
+        ms.replaySeek(MOVES);
+        ms.replaySeek(0);
+        return ms.getReplayMove();
+    }
+}
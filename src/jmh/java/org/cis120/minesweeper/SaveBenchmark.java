@@ -0,0 +1,97 @@
+package org.cis120.minesweeper;
+
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+
+/**
+ * SaveBenchmark measures saving a game with saveGame and loading it back with loadGame, on a game
+ * of MOVES moves. Saves go to a temporary directory that is deleted afterwards.
+ *
+ * Each save writes the game out from scratch (setSavePath starts a new journal) and waits for
+ * the save thread to finish writing it, so the time covers the whole save rather than just
+ * handing the writes off.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SaveBenchmark {
+
+    static final int MOVES = 1000;
+
+    @Param({"16x16", "30x16", "100x100"})
+    public String size;
+
+    @Param({"0.1", "0.2"})
+    public double density;
+
+    private Path dir;
+    private String savePath;
+    private Minesweeper ms; // game that is saved
+    private Minesweeper loader; // game the save is loaded into
+
+    @Setup(Level.Trial)
+    public void create() throws IOException {
+        dir = Files.createTempDirectory("minesweeper-bench");
+        savePath = dir.resolve("save").toString();
+        ms = BenchmarkBoards.newGame(size, density);
+        BenchmarkBoards.playMoves(ms, MOVES);
+        ms.setSavePath(savePath);
+        ms.flushSave();
+        loader = BenchmarkBoards.newGame(size, density);
+        loader.setSavePath(savePath);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        ms.setSavePath(null);
+        loader.setSavePath(null);
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(f -> {
+                try {
+                    Files.delete(f);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        Files.delete(dir);
+    }
+
+    /**
+     * Saves the whole game and waits for it to be written.
+     */
+    @Benchmark
+    public void save() {
+        ms.setSavePath(savePath);
+        ms.flushSave();
+    }
+
+    /**
+     * Loads the saved game.
+     */
+    @Benchmark
+    public boolean load() {
+        return loader.loadGame();
+    }
+
+    /**
+     * Saves the whole game, then loads it into another game.
+     */
+    @Benchmark
+    public boolean roundTrip() {
+        ms.setSavePath(savePath);
+        ms.flushSave();
+        return loader.loadGame();
+    }
+}
@@ -0,0 +1,191 @@
+package org.cis120.minesweeper;
+
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+
+/**
+ * Assets holds the game's images, loaded once and shared by every GameBoard. The sprite sheet is
+ * decoded a single time, and the button images are then scaled up in parallel on the fork-join
+ * common pool. Loading can be started early (see load) so it runs while the rest of the program
+ * starts up. The instructions are only read the first time they're asked for.
+ */
+class Assets {
+
+    static final String SPRITESHEET_PATH = "files/minesweeper_spritesheet.png";
+    static final String INSTRUCTIONS_PATH = "files/instructions.txt";
+    static final int BUTTON_LEN = 48; // size of the button images on screen
+
+    private static FutureTask<Assets> loading = null;
+    private static String instructions = null;
+
+    // tile sprites, indexed by the BoardRenderer.TILE_ constants
+    final Image[] tiles = new Image[BoardRenderer.TILE_COUNT];
+
+    // images for reset/status button
+    Image smile;
+    Image smilePressed;
+    Image surprised;
+    Image sunglasses;
+    Image dead;
+
+    // images for replay button
+    Image replay;
+    Image replayPressed;
+
+    // images for help/instructions button
+    Image help;
+    Image helpPressed;
+
+    private long loadNanos; // how long loading took
+
+    /**
+     * Starts loading the assets on a background thread, unless they're already loading.
+     *
+     * @return the assets, once they're loaded
+     */
+    static synchronized Future<Assets> load() {
+        if (loading == null) {
+            loading = new FutureTask<>(new Callable<Assets>() {
+                @Override
+                public Assets call() {
+                    return new Assets();
+                }
+            });
+            Thread t = new Thread(loading, "minesweeper-assets");
+            t.setDaemon(true);
+            t.start();
+        }
+        return loading;
+    }
+
+    /**
+     * Gets the assets, waiting for them to finish loading (and starting to load them if nothing
+     * has yet).
+     *
+     * @return the assets
+     */
+    static Assets get() {
+        Future<Assets> f = load();
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return f.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Loading assets failed", e.getCause());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Gets the instructions, reading them from INSTRUCTIONS_PATH the first time.
+     *
+     * @return the instructions, or null if they couldn't be read
+     */
+    static synchronized String getInstructions() {
+        if (instructions == null) {
+            try {
+                instructions = new String(Files.readAllBytes(Paths.get(INSTRUCTIONS_PATH)),
+                        StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                System.out.println("IOException: Missing instructions file");
+            }
+        }
+        return instructions;
+    }
+
+    /**
+     * Loads every image. Images that couldn't be loaded are left null.
+     */
+    private Assets() {
+        long start = System.nanoTime();
+        BufferedImage spritesheet;
+        try {
+            spritesheet = ImageIO.read(new File(SPRITESHEET_PATH));
+        } catch (IOException e) {
+            System.out.println("IOException: Sprite-sheet not found");
+            loadNanos = System.nanoTime() - start;
+            return;
+        }
+
+        tiles[BoardRenderer.TILE_HIDDEN] = spritesheet.getSubimage(14, 195, 16, 16);
+        tiles[BoardRenderer.TILE_BOMB] = spritesheet.getSubimage(99, 195, 16, 16);
+        tiles[BoardRenderer.TILE_BOMB_RED] = spritesheet.getSubimage(116, 195, 16, 16);
+        tiles[BoardRenderer.TILE_BOMB_CROSSED] = spritesheet.getSubimage(133, 195, 16, 16);
+        tiles[BoardRenderer.TILE_FLAG] = spritesheet.getSubimage(48, 195, 16, 16);
+        tiles[BoardRenderer.TILE_NUM] = spritesheet.getSubimage(31, 195, 16, 16);
+        for (int i = 1; i <= 8; i++) {
+            tiles[BoardRenderer.TILE_NUM + i] = spritesheet.getSubimage(14 + 17 * (i - 1), 212,
+                    16, 16);
+        }
+
+        // the button images are side by side in one row of the sheet, scale them all at once
+        List<Callable<Image>> scaling = new ArrayList<>();
+        for (int b = 0; b < 9; b++) {
+            final BufferedImage src = spritesheet.getSubimage(14 + 25 * b, 170, 24, 24);
+            scaling.add(new Callable<Image>() {
+                @Override
+                public Image call() {
+                    return scale(src, BUTTON_LEN);
+                }
+            });
+        }
+        List<Future<Image>> scaled = ForkJoinPool.commonPool().invokeAll(scaling);
+        try {
+            smile = scaled.get(0).get();
+            smilePressed = scaled.get(1).get();
+            surprised = scaled.get(2).get();
+            sunglasses = scaled.get(3).get();
+            dead = scaled.get(4).get();
+            replay = scaled.get(5).get();
+            replayPressed = scaled.get(6).get();
+            help = scaled.get(7).get();
+            helpPressed = scaled.get(8).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Scaling images failed", e);
+        }
+        loadNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * @return how long loading the assets took, in ns
+     */
+    long getLoadNanos() {
+        return loadNanos;
+    }
+
+    /**
+     * Scales an image to a square of the given size, keeping the pixel art sharp.
+     */
+    private static Image scale(Image src, int len) {
+        BufferedImage out = new BufferedImage(len, len, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = out.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g.drawImage(src, 0, 0, len, len, null);
+        g.dispose();
+        return out;
+    }
+}
@@ -0,0 +1,176 @@
+package org.cis120.minesweeper;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * BoardGenerator searches for no-guess boards: boards that can be solved from the start tile
+ * without ever having to guess. Candidate boards are numbered and each comes from its own seed
+ * derived from the requested seed. Worker threads take candidates in order and play each one out
+ * on a scratch game, revealing only tiles the Solver (or, when it's stuck, the ProbabilityEngine)
+ * proves are safe. The lowest-numbered candidate that gets solved is the answer, so the board
+ * for a seed is the same however many threads there are.
+ *
+ * The board for a candidate seed is the one placeMines makes from it, with the bombs on the start
+ * tile and the 8 around it moved away as by a safe-opening first click.
+ */
+class BoardGenerator {
+
+    private static final int MAX_CANDIDATES = 20000; // candidates to try before giving up
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L; // spreads candidate numbers apart
+
+    private static BoardGenerator instance = null;
+
+    private final ExecutorService pool;
+    private final int threads;
+
+    // each worker thread keeps a scratch game to try candidates on, resized as needed
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<>();
+
+    /**
+     * Scratch is a worker's game for trying candidates, with a solver and probability engine.
+     */
+    private static class Scratch {
+        final Minesweeper game;
+        final Solver solver;
+        final ProbabilityEngine engine;
+
+        Scratch(int width, int height, int numMines) {
+            game = new Minesweeper(width, height, numMines, 0);
+            game.setInstrumented(false); // candidates aren't the player's moves
+            game.setSafeOpening(true);
+            solver = new Solver(game);
+            engine = new ProbabilityEngine(game, solver);
+        }
+    }
+
+    /**
+     * Gets the shared board generator, starting its threads the first time it's needed.
+     *
+     * @return the board generator
+     */
+    static synchronized BoardGenerator get() {
+        if (instance == null) {
+            instance = new BoardGenerator(Runtime.getRuntime().availableProcessors());
+        }
+        return instance;
+    }
+
+    private BoardGenerator(int threads) {
+        this.threads = threads;
+        final AtomicInteger count = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "minesweeper-generator-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Gets the seed of candidate k for a requested seed.
+     *
+     * @param seed requested seed
+     * @param k candidate number
+     * @return seed to place the candidate's bombs from
+     */
+    static long candidateSeed(long seed, int k) {
+        return k == 0 ? seed : new SplittableRandom(seed + k * GOLDEN).nextLong();
+    }
+
+    /**
+     * Finds a no-guess board.
+     *
+     * @param width number of columns on the board
+     * @param height number of rows on the board
+     * @param numMines number of bombs on the board
+     * @param start index of the tile the board is opened from
+     * @param seed seed the candidates are derived from
+     * @return seed of the first candidate that can be solved without guessing, or null if none of
+     *         the candidates could be (the board is too dense)
+     */
+    Long generate(final int width, final int height, final int numMines, final int start,
+            final long seed) {
+        if (width * height - numMines < 9) { // no room for an opening
+            return null;
+        }
+        final AtomicInteger next = new AtomicInteger(); // next candidate to try
+        final AtomicInteger found = new AtomicInteger(Integer.MAX_VALUE); // lowest solved so far
+        Callable<Void> search = new Callable<Void>() {
+            @Override
+            public Void call() {
+                while (true) {
+                    int k = next.getAndIncrement();
+                    if (k >= found.get() || k >= MAX_CANDIDATES) {
+                        return null;
+                    }
+                    if (solvable(width, height, numMines, start, candidateSeed(seed, k))) {
+                        int f = found.get();
+                        while (k < f && !found.compareAndSet(f, k)) {
+                            f = found.get();
+                        }
+                        return null;
+                    }
+                }
+            }
+        };
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(search));
+        }
+        try {
+            for (Future<Void> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Board generation failed", e);
+        }
+        int k = found.get();
+        return k == Integer.MAX_VALUE ? null : candidateSeed(seed, k);
+    }
+
+    /**
+     * Plays a candidate out on this thread's scratch game, revealing only tiles that are certainly
+     * safe.
+     *
+     * @return true if the whole board was revealed without a guess
+     */
+    private boolean solvable(int width, int height, int numMines, int start, long candidate) {
+        Scratch s = scratch.get();
+        if (s == null || s.game.getWidth() != width || s.game.getHeight() != height ||
+                s.game.getNumMines() != numMines) {
+            s = new Scratch(width, height, numMines);
+            scratch.set(s);
+        }
+        Minesweeper game = s.game;
+        game.resetWithSeed(candidate);
+        s.solver.reset();
+        int i = start;
+        while (game.playTurn(i % width, i / width, true) && game.getState() == 0) {
+            s.solver.update(i % width, i / width);
+            s.solver.deduce();
+            i = s.solver.nextSafe();
+            if (i < 0) { // look for a tile the single and pairwise rules can't reach
+                s.engine.compute();
+                i = s.engine.getBestGuess();
+                if (i < 0 || !s.engine.isExact() ||
+                        s.engine.getProbability(i % width, i / width) != 0) {
+                    return false;
+                }
+            }
+        }
+        return game.getState() == 1;
+    }
+}
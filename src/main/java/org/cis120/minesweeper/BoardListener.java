@@ -0,0 +1,15 @@
+package org.cis120.minesweeper;
+
+
+/**
+ * BoardListener is told about every change to a game's board, see Minesweeper.addBoardListener.
+ */
+public interface BoardListener {
+
+    /**
+     * Called after each change to the board, on the thread that made it.
+     *
+     * @param changes what changed
+     */
+    void boardChanged(ChangeSet changes);
+}
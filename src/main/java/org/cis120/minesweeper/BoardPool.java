@@ -0,0 +1,225 @@
+package org.cis120.minesweeper;
+
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * BoardPool keeps a few boards ready for each board configuration (size, number of bombs and
+ * whether it's a no-guess board), so that starting a new game just swaps in a board that was
+ * generated earlier instead of generating one while the player waits. Boards are generated on a
+ * low-priority background thread, which tops a configuration's boards back up whenever one is
+ * taken. Games opt in with Minesweeper.setUseBoardPool.
+ *
+ * Only the most recently used configurations are kept, so changing board size over and over
+ * doesn't pile up boards.
+ */
+public class BoardPool {
+
+    public static final int DEFAULT_CAPACITY = 4; // boards kept ready per configuration
+    private static final int MAX_CONFIGS = 8; // configurations kept at once
+
+    private static BoardPool instance = null;
+
+    private final ExecutorService refiller;
+    private final SplittableRandom seeds = new SplittableRandom(); // used on the refill thread
+    private final Map<String, Pool> pools = new LinkedHashMap<>(16, 0.75f, true);
+    private volatile int capacity = DEFAULT_CAPACITY;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Board is a generated board: the cells (bombs and bomb counts, all hidden) and what the game
+     * needs to know about where they came from.
+     */
+    static class Board {
+        final byte[] cells;
+        final long seed;
+        final int startTile;
+
+        Board(byte[] cells, long seed, int startTile) {
+            this.cells = cells;
+            this.seed = seed;
+            this.startTile = startTile;
+        }
+    }
+
+    /**
+     * Pool holds the ready boards for one configuration.
+     */
+    private static class Pool {
+        final int width;
+        final int height;
+        final int numMines;
+        final boolean noGuess;
+        final BlockingQueue<Board> ready;
+        final AtomicBoolean refilling = new AtomicBoolean();
+        Minesweeper scratch; // generates the boards, only used on the refill thread
+
+        Pool(int width, int height, int numMines, boolean noGuess, int capacity) {
+            this.width = width;
+            this.height = height;
+            this.numMines = numMines;
+            this.noGuess = noGuess;
+            ready = new ArrayBlockingQueue<>(capacity);
+        }
+    }
+
+    /**
+     * Gets the shared board pool, starting its thread the first time it's needed.
+     *
+     * @return the board pool
+     */
+    public static synchronized BoardPool get() {
+        if (instance == null) {
+            instance = new BoardPool();
+        }
+        return instance;
+    }
+
+    private BoardPool() {
+        refiller = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "minesweeper-pool");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Sets how many boards are kept ready per configuration. Takes effect for configurations that
+     * aren't in the pool yet.
+     *
+     * @param capacity number of boards, at least 1
+     */
+    public void setCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid pool capacity: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Starts filling the pool for a configuration if it isn't full already.
+     *
+     * @param width number of columns on the board
+     * @param height number of rows on the board
+     * @param numMines number of bombs on the board
+     * @param noGuess whether the boards must be solvable without guessing
+     */
+    public void warm(int width, int height, int numMines, boolean noGuess) {
+        refill(pool(width, height, numMines, noGuess));
+    }
+
+    /**
+     * Takes a ready board for a configuration, and starts generating a replacement.
+     *
+     * @return the board, or null if none was ready (the caller has to generate one itself)
+     */
+    Board take(int width, int height, int numMines, boolean noGuess) {
+        Pool p = pool(width, height, numMines, noGuess);
+        Board b = p.ready.poll();
+        if (b == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        refill(p);
+        return b;
+    }
+
+    /**
+     * @return number of boards handed out ready-made (also shown in GameMetrics)
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of times a board was wanted but none was ready
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Gets how many boards are ready for a configuration.
+     *
+     * @return number of ready boards
+     */
+    public int getReady(int width, int height, int numMines, boolean noGuess) {
+        return pool(width, height, numMines, noGuess).ready.size();
+    }
+
+    /**
+     * Gets the pool for a configuration, making it (and dropping the least recently used one if
+     * there are too many) if needed.
+     */
+    private synchronized Pool pool(int width, int height, int numMines, boolean noGuess) {
+        String key = width + "x" + height + "/" + numMines + (noGuess ? "/no-guess" : "");
+        Pool p = pools.get(key);
+        if (p == null) {
+            p = new Pool(width, height, numMines, noGuess, capacity);
+            pools.put(key, p);
+            if (pools.size() > MAX_CONFIGS) {
+                Iterator<Pool> it = pools.values().iterator();
+                it.next();
+                it.remove();
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Queues generating boards for a pool until it's full, unless that's already queued.
+     */
+    private void refill(final Pool p) {
+        if (p.ready.remainingCapacity() == 0 || !p.refilling.compareAndSet(false, true)) {
+            return;
+        }
+        refiller.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (p.ready.remainingCapacity() > 0) {
+                        if (!p.ready.offer(generate(p))) {
+                            break;
+                        }
+                    }
+                } finally {
+                    p.refilling.set(false); // so a failed refill doesn't stop later ones
+                }
+                if (p.ready.remainingCapacity() > 0) { // taken from while we were finishing
+                    refill(p);
+                }
+            }
+        });
+    }
+
+    /**
+     * Generates a board for a pool. Runs on the refill thread.
+     */
+    private Board generate(Pool p) {
+        if (p.scratch == null) {
+            p.scratch = new Minesweeper(p.width, p.height, p.numMines, seeds.nextLong());
+            p.scratch.setInstrumented(false);
+            p.scratch.setNoGuess(p.noGuess);
+        }
+        p.scratch.resetWithSeed(seeds.nextLong());
+        return p.scratch.detachBoard();
+    }
+}
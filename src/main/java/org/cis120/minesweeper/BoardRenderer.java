@@ -0,0 +1,317 @@
+package org.cis120.minesweeper;
+
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.BitSet;
+
+
+/**
+ * BoardRenderer draws a Minesweeper board for GameBoard. The tile sprites are scaled once, when
+ * the renderer is made or the tile size changes, into a single atlas image; drawing a tile is
+ * then a plain copy from the atlas with no scaling.
+ *
+ * The renderer keeps a back buffer holding the board as last drawn: the whole board if it fits
+ * in MAX_BUFFER_PIXELS, otherwise the area being painted and some room around it to scroll into
+ * (the buffer moves when a paint falls outside it). Changes to the board (see invalidate) only
+ * mark their tiles stale, and painting redraws just the stale tiles inside the requested area
+ * into the back buffer and copies that area out of it. Stale tiles outside it are left for the
+ * paint that shows them, so the cost of a paint depends on how much changed and how much is
+ * shown, not on the size of the board, and a board shown in a scrolling viewport costs the same
+ * to paint however big it is. Only a requested area too big for any back buffer is drawn
+ * straight from the atlas.
+ *
+ * On a no-guess board, the start tile (see Minesweeper.getStartTile) is outlined until the first
+ * tile is revealed, since the board can only be solved without guessing when opened there.
+ */
+class BoardRenderer {
+
+    // positions of the sprites in the atlas, and in the array passed to the constructor
+    static final int TILE_HIDDEN = 0;
+    static final int TILE_BOMB = 1; // shows when game over
+    static final int TILE_BOMB_RED = 2; // the bomb the player revealed
+    static final int TILE_BOMB_CROSSED = 3; // a flag on a tile without a bomb, when game over
+    static final int TILE_FLAG = 4;
+    static final int TILE_NUM = 5; // TILE_NUM + n shows a revealed tile with n bombs around it
+    static final int TILE_COUNT = TILE_NUM + 9;
+
+    private static final long MAX_BUFFER_PIXELS = 1L << 22; // largest back buffer (16 MB)
+    private static final Color START_COLOR = new Color(0, 200, 0); // outline of the start tile
+
+    private final Image[] sprites;
+    private int tileLen;
+    private BufferedImage atlas;
+
+    private BufferedImage buffer = null; // the board as last drawn, null until the first paint
+    private final Rectangle bufferTiles = new Rectangle(); // tiles held in the buffer
+    private int boardWidth = 0; // board size the buffer was drawn for, in tiles
+    private int boardHeight = 0;
+    // tiles in the buffer that need to be redrawn, by (y - bufferTiles.y) * bufferTiles.width +
+    // (x - bufferTiles.x)
+    private final BitSet stale = new BitSet();
+    private int startShown = -1; // start tile outlined as last drawn, -1 if none
+
+    /**
+     * Creates a renderer, scaling the sprites into the atlas.
+     *
+     * @param sprites image for each kind of tile, indexed by the TILE_ constants (null entries,
+     *                for sprites that couldn't be loaded, are left blank)
+     * @param tileLen width and height of a tile on screen, in pixels
+     */
+    BoardRenderer(Image[] sprites, int tileLen) {
+        this.sprites = sprites.clone();
+        setTileLen(tileLen);
+    }
+
+    /**
+     * Changes the size tiles are drawn at, scaling the sprites into a new atlas.
+     *
+     * @param tileLen width and height of a tile on screen, in pixels
+     */
+    void setTileLen(int tileLen) {
+        this.tileLen = tileLen;
+        buffer = null; // drawn at the old size
+        atlas = createImage(TILE_COUNT * tileLen, tileLen, Transparency.TRANSLUCENT);
+        Graphics2D g = atlas.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, // keep the pixel art sharp
+                RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        for (int t = 0; t < TILE_COUNT && t < sprites.length; t++) {
+            if (sprites[t] != null) {
+                g.drawImage(sprites[t], t * tileLen, 0, tileLen, tileLen, null);
+            }
+        }
+        g.dispose();
+    }
+
+    /**
+     * Marks the tiles a change touched as needing to be redrawn.
+     *
+     * @param changes change to the board
+     */
+    void invalidate(ChangeSet changes) {
+        if (changes.isFull() || changes.isStateChanged()) { // game over shows every bomb
+            invalidateAll();
+            return;
+        }
+        for (int k = 0; k < changes.size(); k++) {
+            markStale(changes.getX(k), changes.getY(k));
+        }
+    }
+
+    /**
+     * Marks the whole board as needing to be redrawn.
+     */
+    void invalidateAll() {
+        stale.set(0, bufferTiles.width * bufferTiles.height);
+    }
+
+    /**
+     * Marks tile (x, y) as needing to be redrawn, if it's in the buffer.
+     */
+    private void markStale(int x, int y) {
+        if (bufferTiles.contains(x, y)) {
+            stale.set((y - bufferTiles.y) * bufferTiles.width + x - bufferTiles.x);
+        }
+    }
+
+    /**
+     * Paints the part of the board inside clip.
+     *
+     * @param g graphics to paint with, with the board's top left corner at (0, 0)
+     * @param ms game to paint
+     * @param clip area to paint in pixels, or null for the whole board
+     */
+    void paint(Graphics g, Minesweeper ms, Rectangle clip) {
+        int width = ms.getWidth();
+        int height = ms.getHeight();
+        int state = ms.getState();
+        int start = startTileToShow(ms, state);
+        if (start != startShown) { // the outline appeared or went away
+            if (startShown >= 0) {
+                markStale(startShown % width, startShown / width);
+            }
+            if (start >= 0) {
+                markStale(start % width, start / width);
+            }
+            startShown = start;
+        }
+        int x0 = 0;
+        int y0 = 0;
+        int x1 = width - 1;
+        int y1 = height - 1;
+        if (clip != null) { // tiles overlapping the clip
+            x0 = Math.max(x0, clip.x / tileLen);
+            y0 = Math.max(y0, clip.y / tileLen);
+            x1 = Math.min(x1, (clip.x + clip.width - 1) / tileLen);
+            y1 = Math.min(y1, (clip.y + clip.height - 1) / tileLen);
+        }
+
+        if (x0 > x1 || y0 > y1) {
+            return;
+        }
+
+        if (!placeBuffer(width, height, x0, y0, x1, y1)) { // too big to buffer
+            drawTiles(g, ms, state, x0, y0, x1, y1);
+            return;
+        }
+        Graphics bg = buffer.getGraphics();
+        bg.translate(-bufferTiles.x * tileLen, -bufferTiles.y * tileLen);
+        for (int y = y0; y <= y1; y++) { // redraw the stale tiles in the clip, row by row
+            int row = (y - bufferTiles.y) * bufferTiles.width - bufferTiles.x; // bit of x = 0
+            for (int i = stale.nextSetBit(row + x0); i >= 0 && i <= row + x1;
+                    i = stale.nextSetBit(i + 1)) {
+                drawTile(bg, ms, state, i - row, y);
+            }
+            stale.clear(row + x0, row + x1 + 1);
+        }
+        bg.dispose();
+        int px0 = x0 * tileLen;
+        int py0 = y0 * tileLen;
+        int px1 = (x1 + 1) * tileLen;
+        int py1 = (y1 + 1) * tileLen;
+        int sx = bufferTiles.x * tileLen;
+        int sy = bufferTiles.y * tileLen;
+        g.drawImage(buffer, px0, py0, px1, py1, px0 - sx, py0 - sy, px1 - sx, py1 - sy, null);
+    }
+
+    /**
+     * Makes sure the buffer holds the tiles (x0, y0)-(x1, y1), moving it if they aren't all in
+     * it. The buffer holds the whole board if it fits in MAX_BUFFER_PIXELS, otherwise those tiles
+     * and as much room around them again as fits, so scrolling a little doesn't move it. A moved
+     * buffer starts with every tile stale.
+     *
+     * @return false if those tiles alone are too big for a buffer
+     */
+    private boolean placeBuffer(int width, int height, int x0, int y0, int x1, int y1) {
+        if (buffer != null && boardWidth == width && boardHeight == height &&
+                bufferTiles.contains(x0, y0) && bufferTiles.contains(x1, y1)) {
+            return true;
+        }
+        long tilePixels = (long) tileLen * tileLen;
+        int cols = x1 - x0 + 1;
+        int rows = y1 - y0 + 1;
+        int w = width;
+        int h = height;
+        if ((long) w * h * tilePixels > MAX_BUFFER_PIXELS) {
+            if ((long) cols * rows * tilePixels > MAX_BUFFER_PIXELS) {
+                return false;
+            }
+            w = Math.min(width, cols * 2); // half as much again on each side
+            h = Math.min(height, rows * 2);
+            if ((long) w * h * tilePixels > MAX_BUFFER_PIXELS) {
+                w = cols;
+                h = rows;
+            }
+        }
+        if (buffer == null || buffer.getWidth() != w * tileLen ||
+                buffer.getHeight() != h * tileLen) {
+            buffer = createImage(w * tileLen, h * tileLen, Transparency.OPAQUE);
+        }
+        bufferTiles.setBounds(Math.max(0, Math.min(width - w, x0 - (w - cols) / 2)),
+                Math.max(0, Math.min(height - h, y0 - (h - rows) / 2)), w, h);
+        boardWidth = width;
+        boardHeight = height;
+        stale.clear();
+        invalidateAll();
+        return true;
+    }
+
+    /**
+     * @return the tiles the back buffer holds (empty before the first paint)
+     */
+    Rectangle getBufferTiles() {
+        return new Rectangle(bufferTiles);
+    }
+
+    /**
+     * Draws the tiles in the rectangle of tiles (x0, y0)-(x1, y1).
+     */
+    private void drawTiles(Graphics g, Minesweeper ms, int state, int x0, int y0, int x1,
+            int y1) {
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                drawTile(g, ms, state, x, y);
+            }
+        }
+    }
+
+    /**
+     * Copies the right sprite for tile (x, y) out of the atlas.
+     */
+    private void drawTile(Graphics g, Minesweeper ms, int state, int x, int y) {
+        int sx = spriteFor(ms, state, x, y) * tileLen;
+        int dx = x * tileLen;
+        int dy = y * tileLen;
+        g.drawImage(atlas, dx, dy, dx + tileLen, dy + tileLen, sx, 0, sx + tileLen, tileLen, null);
+        if (y * ms.getWidth() + x == startShown) {
+            g.setColor(START_COLOR);
+            int w = Math.max(1, tileLen / 8);
+            g.fillRect(dx, dy, tileLen, w);
+            g.fillRect(dx, dy + tileLen - w, tileLen, w);
+            g.fillRect(dx, dy + w, w, tileLen - 2 * w);
+            g.fillRect(dx + tileLen - w, dy + w, w, tileLen - 2 * w);
+        }
+    }
+
+    /**
+     * @return the start tile outlined on the last paint, or -1 if none was
+     */
+    int getStartShown() {
+        return startShown;
+    }
+
+    /**
+     * Works out whether the start tile of a no-guess board should be outlined: only until the
+     * player reveals the first tile.
+     *
+     * @return index (y * width + x) of the start tile, or -1 if there's nothing to outline
+     */
+    static int startTileToShow(Minesweeper ms, int state) {
+        int start = ms.getStartTile();
+        if (start < 0 || state != 0) {
+            return -1;
+        }
+        int width = ms.getWidth();
+        if (ms.getSafeTilesLeft() != width * ms.getHeight() - ms.getNumMines() ||
+                ms.getCell(start % width, start / width) != Minesweeper.HIDDEN) {
+            return -1; // already opened, or flagged
+        }
+        return start;
+    }
+
+    /**
+     * Works out which sprite shows tile (x, y).
+     *
+     * @return one of the TILE_ constants
+     */
+    static int spriteFor(Minesweeper ms, int state, int x, int y) {
+        int cell = ms.getCell(x, y);
+        if (cell >= 0) { // number
+            return TILE_NUM + cell;
+        } else if (cell == Minesweeper.HIDDEN) {
+            if (state == -1 && ms.isBomb(x, y)) { // reveal bombs when game over
+                return TILE_BOMB;
+            }
+            return TILE_HIDDEN;
+        } else if (cell == Minesweeper.FLAG) {
+            if (state == -1 && !ms.isBomb(x, y)) { // reveal wrong flags when game over
+                return TILE_BOMB_CROSSED;
+            }
+            return TILE_FLAG;
+        }
+        return TILE_BOMB_RED; // the bomb the player revealed
+    }
+
+    /**
+     * Makes an image in the screen's native format if there is a screen, so copying it to the
+     * screen needs no conversion (and it can be kept in video memory).
+     */
+    private static BufferedImage createImage(int width, int height, int transparency) {
+        if (!GraphicsEnvironment.isHeadless()) {
+            return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                    .getDefaultConfiguration().createCompatibleImage(width, height, transparency);
+        }
+        return new BufferedImage(width, height, transparency == Transparency.OPAQUE ?
+                BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+    }
+}
@@ -0,0 +1,107 @@
+package org.cis120.minesweeper;
+
+
+/**
+ * ChangeSet describes what one change to a game did to the board: which tiles look different
+ * afterwards and what they show now (as returned by getCell), and the game state before and
+ * after. Changes that replace the whole board (a new game, loading a save, jumping around in a
+ * replay) don't list tiles and are marked as full instead.
+ *
+ * A view only needs to redraw the listed tiles, and a remote observer can be sent the change set
+ * instead of the whole board.
+ */
+public class ChangeSet {
+
+    private final int width;
+    private final int[] indices; // changed tiles, index y * width + x
+    private final int[] values; // what each changed tile shows now
+    private final boolean full;
+    private final int oldState;
+    private final int newState;
+
+    /**
+     * Creates a change set.
+     *
+     * @param width number of columns on the board
+     * @param indices indices of the changed tiles
+     * @param values what each changed tile shows now
+     * @param full true if the whole board may have changed
+     * @param oldState game state before the change
+     * @param newState game state after the change
+     */
+    ChangeSet(int width, int[] indices, int[] values, boolean full, int oldState, int newState) {
+        this.width = width;
+        this.indices = indices;
+        this.values = values;
+        this.full = full;
+        this.oldState = oldState;
+        this.newState = newState;
+    }
+
+    /**
+     * @return number of changed tiles listed (0 for a full change)
+     */
+    public int size() {
+        return indices.length;
+    }
+
+    /**
+     * @param k which changed tile
+     * @return index (y * width + x) of the k-th changed tile
+     */
+    public int getIndex(int k) {
+        return indices[k];
+    }
+
+    /**
+     * @param k which changed tile
+     * @return x coordinate of the k-th changed tile
+     */
+    public int getX(int k) {
+        return indices[k] % width;
+    }
+
+    /**
+     * @param k which changed tile
+     * @return y coordinate of the k-th changed tile
+     */
+    public int getY(int k) {
+        return indices[k] / width;
+    }
+
+    /**
+     * @param k which changed tile
+     * @return what the k-th changed tile shows now, as returned by getCell
+     */
+    public int getValue(int k) {
+        return values[k];
+    }
+
+    /**
+     * @return true if the whole board may have changed, rather than just the listed tiles
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    /**
+     * @return game state before the change (see Minesweeper.getState)
+     */
+    public int getOldState() {
+        return oldState;
+    }
+
+    /**
+     * @return game state after the change (see Minesweeper.getState)
+     */
+    public int getNewState() {
+        return newState;
+    }
+
+    /**
+     * @return true if the change moved the game to a different state
+     */
+    public boolean isStateChanged() {
+        return oldState != newState;
+    }
+}
@@ -1,57 +1,60 @@
 package org.cis120.minesweeper;
 
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
 
 import static org.cis120.minesweeper.Minesweeper.*;
 
 
-public class GameBoard extends JPanel {
+public class GameBoard extends JPanel implements Scrollable {
 
     private Minesweeper ms; // model for the game
+    private BoardRenderer renderer; // draws the board
+    private final ReplayScheduler replayer; // plays back replays
     private JButton status; // reset/status button
 
     // Game constants
-    public static final int TILE_LEN = 32;
-    public static final int BOARD_WIDTH = GRID_WIDTH * TILE_LEN;
-    public static final int BOARD_HEIGHT = GRID_HEIGHT * TILE_LEN;
-
-    private static Image hidden = null;
-    private static Image bomb = null; // shows when game over
-    private static Image bombRed = null;  // shows when game over, shows on bomb tile player clicks
-    private static Image bombCrossed = null;  // shows when game over, replaces flags that were on
-                                             // non-bomb tiles
-    private static Image flag = null;
-    private static Image[] nums = new Image[9];
-
-    // images for reset/status button
-    private static Image smile = null;
-    private static Image smilePressed = null;
-    private static Image surprised = null;
-    private static Image sunglasses = null;
-    private static Image dead = null;
-
-    // images for replay button
-    private static Image replay = null;
-    private static Image replayPressed = null;
-
-    // images for help/instructions button
-    private static Image help = null;
-    private static Image helpPressed = null;
+    public static final int TILE_LEN = 32; // default size of a tile on screen
+    public static final int MIN_TILE_LEN = 8; // sizes tiles can be zoomed between
+    public static final int MAX_TILE_LEN = 64;
+    private static final int MAX_VIEW_WIDTH = 960; // largest size of the scrolling viewport
+    private static final int MAX_VIEW_HEIGHT = 640;
+
+    private int tileLen = TILE_LEN; // current size of a tile on screen
+
+    private final Assets assets; // images, shared by every board
+    private Runnable onFirstPaint = null; // run once the board has been painted for the first time
 
     /**
-     * Initializes the game board.
+     * Initializes the game board with the default board parameters.
      */
     public GameBoard() {
+        this(GRID_WIDTH, GRID_HEIGHT, NUM_MINES);
+    }
+
+    /**
+     * Initializes the game board.
+     *
+     * @param gridWidth number of columns on the board
+     * @param gridHeight number of rows on the board
+     * @param numMines number of bombs placed on the board
+     */
+    public GameBoard(int gridWidth, int gridHeight, int numMines) {
+        this(new Minesweeper(gridWidth, gridHeight, numMines));
+    }
+
+    /**
+     * Initializes the game board to show a game that has already been set up (such as one loaded
+     * from a save while the window was being built).
+     *
+     * @param ms model for the game
+     */
+    public GameBoard(Minesweeper ms) {
         // creates border around the court area, JComponent method
         setBorder(BorderFactory.createLineBorder(Color.BLACK));
 
@@ -59,7 +62,41 @@ public class GameBoard extends JPanel {
         // keyboard focus, key events are handled by its key listener.
         setFocusable(true);
 
-        ms = new Minesweeper(); // initializes model for the game
+        this.ms = ms;
+
+        // repaints the area around the tiles each change to the board touched, or everything if
+        // the game state changed (bombs are shown when the game is lost). The start tile of a
+        // no-guess board is repainted too while it's outlined, so the outline goes away
+        ms.addBoardListener(new BoardListener() {
+            @Override
+            public void boardChanged(ChangeSet changes) {
+                renderer.invalidate(changes);
+                int start = renderer.getStartShown();
+                if (start >= 0) {
+                    repaint(start % ms.getWidth() * tileLen, start / ms.getWidth() * tileLen,
+                            tileLen, tileLen);
+                }
+                if (changes.isFull() || changes.isStateChanged()) {
+                    repaint();
+                    return;
+                }
+                if (changes.size() == 0) {
+                    return;
+                }
+                int x0 = Integer.MAX_VALUE;
+                int y0 = Integer.MAX_VALUE;
+                int x1 = -1;
+                int y1 = -1;
+                for (int k = 0; k < changes.size(); k++) { // bounding box of the changed tiles
+                    x0 = Math.min(x0, changes.getX(k));
+                    y0 = Math.min(y0, changes.getY(k));
+                    x1 = Math.max(x1, changes.getX(k));
+                    y1 = Math.max(y1, changes.getY(k));
+                }
+                repaint(x0 * tileLen, y0 * tileLen, (x1 - x0 + 1) * tileLen,
+                        (y1 - y0 + 1) * tileLen);
+            }
+        });
 
         /*
          * Listens for mouse clicks. Updates the model, then updates the game
@@ -73,66 +110,60 @@ public class GameBoard extends JPanel {
                 }
                 Point p = e.getPoint();
 
-                // updates the model given the coordinates of the mouse click
-                ms.playTurn(p.x / TILE_LEN, p.y / TILE_LEN, SwingUtilities.isLeftMouseButton(e));
+                // updates the model given the tile under the mouse click (the point is in board
+                // coordinates whatever the scroll position), which repaints the tiles it changed
+                ms.playTurn(p.x / tileLen, p.y / tileLen, SwingUtilities.isLeftMouseButton(e));
 
                 updateStatus(); // updates status
-                repaint(); // repaints the game board
             }
             @Override
             public void mousePressed(MouseEvent e) { // checks if mouse is pressed down
                 if (SwingUtilities.isLeftMouseButton(e) && ms.getState() == 0) {
-                    status.setIcon(new ImageIcon(surprised)); // set status to surprised face if
-                                                              // user is about to reveal a tile
+                    status.setIcon(new ImageIcon(assets.surprised)); // set status to surprised
+                                                                     // face if user is about
+                                                                     // to reveal a tile
+                }
+            }
+        });
+
+        /*
+         * Ctrl + mouse wheel zooms in and out around the mouse. Without ctrl, the wheel scrolls
+         * the viewport as usual.
+         */
+        addMouseWheelListener(new MouseWheelListener() {
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if (!e.isControlDown()) { // pass it on to the scroll pane
+                    Container parent = getParent();
+                    if (parent != null) {
+                        parent.dispatchEvent(SwingUtilities.convertMouseEvent(GameBoard.this, e,
+                                parent));
+                    }
+                    return;
                 }
+                int len = e.getWheelRotation() < 0 ? tileLen * 2 : tileLen / 2;
+                zoom(len, e.getPoint());
             }
         });
 
-        // read in all sprite images
-        try {
-            File f = new File("files/minesweeper_spritesheet.png");
-            BufferedImage spritesheet = ImageIO.read(f);
-            hidden = spritesheet.getSubimage(14, 195, 16, 16);
-            bomb = spritesheet.getSubimage(99, 195, 16, 16);
-            bombRed = spritesheet.getSubimage(116, 195, 16, 16);
-            bombCrossed = spritesheet.getSubimage(133, 195, 16, 16);
-            flag = spritesheet.getSubimage(48, 195, 16, 16);
-            nums[0] = spritesheet.getSubimage(31, 195, 16, 16);
-            for (int i = 1; i <= 8; i++) {
-                nums[i] = spritesheet.getSubimage(14 + 17 * (i - 1), 212, 16, 16);
+        // plays back replays, updating the status button after each step
+        replayer = new ReplayScheduler(ms, new Runnable() {
+            @Override
+            public void run() {
+                updateStatus();
             }
+        });
 
-            smile = spritesheet.getSubimage(14, 170, 24, 24).
-                    getScaledInstance(48, 48, Image.SCALE_DEFAULT);
-            smilePressed = spritesheet.getSubimage(39, 170, 24, 24).
-                    getScaledInstance(48, 48, Image.SCALE_DEFAULT);
-            surprised = spritesheet.getSubimage(64, 170, 24, 24).
-                    getScaledInstance(48, 48, Image.SCALE_DEFAULT);
-            sunglasses = spritesheet.getSubimage(89, 170, 24, 24).
-                    getScaledInstance(48, 48, Image.SCALE_DEFAULT);
-            dead = spritesheet.getSubimage(114, 170, 24, 24).
-                    getScaledInstance(48, 48, Image.SCALE_DEFAULT);
-
-            replay = spritesheet.getSubimage(139, 170, 24, 24).
-                    getScaledInstance(48, 48, Image.SCALE_DEFAULT);
-            replayPressed = spritesheet.getSubimage(164, 170, 24, 24).
-                    getScaledInstance(48, 48, Image.SCALE_DEFAULT);
-
-            help = spritesheet.getSubimage(189, 170, 24, 24).
-                    getScaledInstance(48, 48, Image.SCALE_DEFAULT);
-            helpPressed = spritesheet.getSubimage(214, 170, 24, 24).
-                    getScaledInstance(48, 48, Image.SCALE_DEFAULT);
-        } catch (IOException e) {
-            System.out.println("IOException: Sprite-sheet not found");
-        }
+        assets = Assets.get(); // waits if they are still loading
+        renderer = new BoardRenderer(assets.tiles, tileLen); // scales the tiles once, up front
     }
 
     /**
      * Resets the game to its initial state.
      */
     public void reset() {
+        replayer.cancel(); // the replayed game is gone
         ms.reset(false);
-        repaint();
         updateStatus();
 
         // Makes sure this component has keyboard/mouse focus
@@ -143,11 +174,11 @@ public class GameBoard extends JPanel {
      * Loads game, if load fails, reset the board again (just in case).
      */
     public void loadGame() {
+        replayer.cancel();
         ms.reset(false);
         if (!ms.loadGame()) {
             ms.reset(false);
         }
-        repaint();
         updateStatus();
         requestFocusInWindow();
     }
@@ -168,13 +199,13 @@ public class GameBoard extends JPanel {
     private void updateStatus() {
         int state = ms.getState();
         if (state == 0) { // ongoing
-            status.setIcon(new ImageIcon(smile));
+            status.setIcon(new ImageIcon(assets.smile));
         } else if (state == -1) { // loss
-            status.setIcon(new ImageIcon(dead));
+            status.setIcon(new ImageIcon(assets.dead));
         } else if (state == 1) { // win
-            status.setIcon(new ImageIcon(sunglasses));
+            status.setIcon(new ImageIcon(assets.sunglasses));
         }
-        status.setPressedIcon(new ImageIcon(smilePressed));
+        status.setPressedIcon(new ImageIcon(assets.smilePressed));
     }
 
     /**
@@ -183,8 +214,8 @@ public class GameBoard extends JPanel {
      * @param r new replay button
      */
     public void setReplay(JButton r) {
-        r.setIcon(new ImageIcon(replay));
-        r.setPressedIcon(new ImageIcon(replayPressed));
+        r.setIcon(new ImageIcon(assets.replay));
+        r.setPressedIcon(new ImageIcon(assets.replayPressed));
     }
 
     /**
@@ -193,78 +224,140 @@ public class GameBoard extends JPanel {
      * @param h new help/instructions button
      */
     public void setHelp(JButton h) {
-        h.setIcon(new ImageIcon(help));
-        h.setPressedIcon(new ImageIcon(helpPressed));
+        h.setIcon(new ImageIcon(assets.help));
+        h.setPressedIcon(new ImageIcon(assets.helpPressed));
     }
 
     /**
-     * Draws the game board.
+     * Draws the game board, redrawing only the tiles that changed since the last paint.
      */
     @Override
     public void paintComponent(Graphics g) {
-        super.paintComponent(g);
-
-        // Draws board grid
-        for (int i = 0; i < GRID_WIDTH; i++) {
-            g.drawLine(i * TILE_LEN, 0, i * TILE_LEN, BOARD_HEIGHT);
+        if (GameMetrics.enabled) {
+            long start = System.nanoTime();
+            paintBoard(g);
+            GameMetrics.get().recordPaint(System.nanoTime() - start);
+        } else {
+            paintBoard(g);
         }
-        for (int i = 0; i < GRID_HEIGHT; i++) {
-            g.drawLine(0, i * TILE_LEN, BOARD_WIDTH, i * TILE_LEN);
+        if (onFirstPaint != null) {
+            Runnable r = onFirstPaint;
+            onFirstPaint = null;
+            r.run();
         }
+    }
 
-        // Draws tile for each cell in grid
-        for (int x = 0; x < GRID_WIDTH; x++) {
-            for (int y = 0; y < GRID_HEIGHT; y++) {
-                int cell = ms.getCell(x, y);
-                int state = ms.getState();
-                Image toDraw = null;
-                if (cell >= 0) { // draw number
-                    toDraw = nums[cell];
-                } else if (cell == HIDDEN) {
-                    if (state == -1 && ms.isBomb(x, y)) { // reveal bombs when game over
-                        toDraw = bomb;
-                    } else { // draw hidden tile
-                        toDraw = hidden;
-                    }
-                } else if (cell == FLAG) {
-                    if (state == -1 && !ms.isBomb(x, y)) { // reveal wrong flags when game over
-                        toDraw = bombCrossed;
-                    } else { // draw flag
-                        toDraw = flag;
-                    }
-                } else if (cell == BOMB) { // draw red bomb (the bomb the player revealed)
-                    toDraw = bombRed;
-                }
-                g.drawImage(toDraw, x * TILE_LEN, y * TILE_LEN, TILE_LEN, TILE_LEN, null);
+    /**
+     * Does the work of paintComponent.
+     */
+    private void paintBoard(Graphics g) {
+        GameEvents.Paint event = null;
+        if (GameEvents.AVAILABLE) {
+            event = new GameEvents.Paint();
+            event.begin();
+        }
+        super.paintComponent(g);
+        Rectangle clip = g.getClipBounds();
+        renderer.paint(g, ms, clip);
+        if (GameEvents.AVAILABLE && event.shouldCommit()) {
+            if (clip == null) {
+                clip = new Rectangle(getWidth(), getHeight());
             }
+            event.x = clip.x;
+            event.y = clip.y;
+            event.width = clip.width;
+            event.height = clip.height;
+            event.commit();
         }
     }
 
     /**
-     * Replays the current game starting from a completely-hidden board.
+     * Sets something to run right after the board is painted for the first time, such as
+     * reporting how long startup took.
+     *
+     * @param r code to run on the event dispatch thread
+     */
+    public void setOnFirstPaint(Runnable r) {
+        onFirstPaint = r;
+    }
+
+    /**
+     * Replays the current game starting from a completely-hidden board. While a replay is in
+     * progress, pauses it or carries on playing it instead.
      */
     public void replay() {
-        ms.reset(true); // reset with preserveData so only board state is reset
-        repaint();
+        if (!replayer.isActive()) {
+            replayer.start();
+        } else if (replayer.isPlaying()) {
+            replayer.pause();
+        } else {
+            replayer.play();
+        }
         updateStatus();
+    }
 
-        final Timer timer = new Timer(500, null); // timer that plays the next move in the list of
-                                                  // moves every half second
-        timer.addActionListener(new ActionListener() {
-            @Override
-            public void actionPerformed(ActionEvent actionEvent) {
-                boolean res = ms.replayStepForward();
-                updateStatus();
-                repaint();
-                if (!res) { // if there are no more moves, stop the timer and end replay
-                    timer.stop();
-                    ms.finishReplay();
-                }
-            }
-        });
-        timer.setRepeats(true); // automatically restart the timer when time's up
-        ms.startReplay();
-        timer.start();
+    /**
+     * Skips to the end of the replay in progress, if there is one.
+     */
+    public void skipReplay() {
+        replayer.skipToEnd();
+    }
+
+    /**
+     * Sets how fast replays play, taking effect straight away if one is playing.
+     *
+     * @param speed speed relative to the normal replay speed (a move every half second), between
+     *              0.25 and 100
+     */
+    public void setReplaySpeed(double speed) {
+        replayer.setSpeed(speed);
+    }
+
+    /**
+     * @return true if a replay is in progress, whether playing or paused
+     */
+    public boolean isReplaying() {
+        return replayer.isActive();
+    }
+
+    /**
+     * Changes the size tiles are drawn at, keeping the point under the mouse (or the top left
+     * corner of the view) in place.
+     *
+     * @param len new size of a tile in pixels, clamped between MIN_TILE_LEN and MAX_TILE_LEN
+     * @param anchor point in board coordinates to keep in place, or null
+     */
+    public void zoom(int len, Point anchor) {
+        len = Math.max(MIN_TILE_LEN, Math.min(MAX_TILE_LEN, len));
+        if (len == tileLen) {
+            return;
+        }
+        JViewport viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, this);
+        Point view = viewport == null ? new Point() : viewport.getViewPosition();
+        if (anchor == null) {
+            anchor = view;
+        }
+        int offsetX = anchor.x - view.x; // where the anchor is on screen
+        int offsetY = anchor.y - view.y;
+        int ax = (int) ((long) anchor.x * len / tileLen); // where the anchor ends up on the board
+        int ay = (int) ((long) anchor.y * len / tileLen);
+
+        tileLen = len;
+        renderer.setTileLen(len);
+        setSize(getPreferredSize()); // resize now so the new view position isn't clamped
+        revalidate();
+        if (viewport != null) {
+            viewport.setViewPosition(new Point(Math.max(0, ax - offsetX),
+                    Math.max(0, ay - offsetY)));
+        }
+        repaint();
+    }
+
+    /**
+     * @return size of a tile on screen, in pixels
+     */
+    public int getTileLen() {
+        return tileLen;
     }
 
     /**
@@ -272,6 +365,46 @@ public class GameBoard extends JPanel {
      */
     @Override
     public Dimension getPreferredSize() {
-        return new Dimension(BOARD_WIDTH, BOARD_HEIGHT);
+        return new Dimension(ms.getWidth() * tileLen, ms.getHeight() * tileLen);
+    }
+
+    /**
+     * Returns the size of the viewport showing the board: the whole board, unless it's too big
+     * to fit on screen.
+     */
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        Dimension size = getPreferredSize();
+        return new Dimension(Math.min(size.width, MAX_VIEW_WIDTH),
+                Math.min(size.height, MAX_VIEW_HEIGHT));
+    }
+
+    /**
+     * Scrolls by one tile for the arrow buttons and mouse wheel.
+     */
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return tileLen;
+    }
+
+    /**
+     * Scrolls by a screenful, less one tile, for clicks in the scroll bar.
+     */
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation,
+            int direction) {
+        int extent = orientation == SwingConstants.HORIZONTAL ? visibleRect.width
+                : visibleRect.height;
+        return Math.max(tileLen, extent - tileLen);
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return false;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
     }
 }
@@ -0,0 +1,176 @@
+package org.cis120.minesweeper;
+
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * GameEvents holds the Java Flight Recorder events the game emits, so a recording of a session
+ * (for example java -XX:StartFlightRecording=filename=game.jfr ...) shows moves, flood fills,
+ * state changes, saves and loads, replay steps and repaints next to the JVM's own GC, allocation
+ * and thread events. They're listed under "Minesweeper" in JDK Mission Control.
+ *
+ * The game targets Java 8, and Java 8 runtimes before 8u262 don't have JFR. AVAILABLE is false
+ * on those, and the code emitting events checks it first, so none of these classes are ever
+ * loaded there. Where JFR is present, an event that isn't being recorded costs next to nothing.
+ */
+final class GameEvents {
+
+    static final boolean AVAILABLE = isAvailable(); // whether the runtime has JFR
+
+    private GameEvents() {
+    }
+
+    /**
+     * @return true if jdk.jfr can be used
+     */
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    @Name("org.cis120.minesweeper.Move")
+    @Label("Move")
+    @Category("Minesweeper")
+    @Description("A move played with Minesweeper.playTurn, including saving it")
+    @StackTrace(false)
+    static class Move extends Event {
+        @Label("X")
+        int x;
+
+        @Label("Y")
+        int y;
+
+        @Label("Reveal")
+        @Description("True for a reveal, false for a flag or un-flag")
+        boolean reveal;
+
+        @Label("Tiles Revealed")
+        int revealed;
+
+        @Label("State")
+        @Description("Game state after the move")
+        int state;
+    }
+
+    @Name("org.cis120.minesweeper.FloodFill")
+    @Label("Flood Fill")
+    @Category("Minesweeper")
+    @Description("Reveal of a safe tile and, if it's empty, the region around it")
+    @StackTrace(false)
+    static class FloodFill extends Event {
+        @Label("X")
+        int x;
+
+        @Label("Y")
+        int y;
+
+        @Label("Region Size")
+        @Description("Number of tiles revealed")
+        int size;
+    }
+
+    @Name("org.cis120.minesweeper.StateChange")
+    @Label("State Change")
+    @Category("Minesweeper")
+    @Description("Change of game state: 0 ongoing, 1 won, -1 lost, 2/-2/3 replaying")
+    static class StateChange extends Event {
+        @Label("Old State")
+        int oldState;
+
+        @Label("New State")
+        int newState;
+    }
+
+    @Name("org.cis120.minesweeper.Save")
+    @Label("Save")
+    @Category("Minesweeper")
+    @Description("Minesweeper.saveGame handing new moves, and maybe a snapshot, to the save thread")
+    static class Save extends Event {
+        @Label("Moves")
+        int moves;
+
+        @Label("Snapshot")
+        boolean snapshot;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("org.cis120.minesweeper.SaveWrite")
+    @Label("Save Write")
+    @Category("Minesweeper")
+    @Description("Save thread writing a batch of queued saves to disk")
+    @StackTrace(false)
+    static class SaveWrite extends Event {
+        @Label("Tasks")
+        int tasks;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("org.cis120.minesweeper.Load")
+    @Label("Load")
+    @Category("Minesweeper")
+    @Description("Minesweeper.loadGame")
+    static class Load extends Event {
+        @Label("Success")
+        boolean success;
+
+        @Label("Moves")
+        int moves;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("org.cis120.minesweeper.ReplayStep")
+    @Label("Replay Step")
+    @Category("Minesweeper")
+    @Description("Step or jump in a replay")
+    @StackTrace(false)
+    static class ReplayStep extends Event {
+        @Label("From Move")
+        int fromMove;
+
+        @Label("To Move")
+        int toMove;
+
+        @Label("Checkpoint Restored")
+        @Description("True if the board was restored from a checkpoint rather than stepped")
+        boolean restored;
+    }
+
+    @Name("org.cis120.minesweeper.Paint")
+    @Label("Paint")
+    @Category("Minesweeper")
+    @Description("GameBoard.paintComponent")
+    @StackTrace(false)
+    static class Paint extends Event {
+        @Label("X")
+        int x;
+
+        @Label("Y")
+        int y;
+
+        @Label("Width")
+        int width;
+
+        @Label("Height")
+        int height;
+    }
+}
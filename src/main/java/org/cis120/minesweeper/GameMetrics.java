@@ -0,0 +1,290 @@
+package org.cis120.minesweeper;
+
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * GameMetrics records how long moves, flood fills, saves, loads and paints take, how many tiles
+ * each move reveals and how many bytes each save writes, into histograms that never allocate.
+ * The BoardPool's hit and miss counts are shown alongside them.
+ * They can be read over JMX (see register and GameMetricsMXBean), and a summary is printed to the
+ * log every so often while recording is on.
+ *
+ * Recording is off unless the program is started with -Dminesweeper.metrics=true or it's turned
+ * on over JMX. While it's off, the only cost to the code being measured is checking the enabled
+ * flag once per call.
+ */
+public class GameMetrics implements GameMetricsMXBean {
+
+    public static final String OBJECT_NAME = "org.cis120.minesweeper:type=GameMetrics";
+    private static final long LOG_INTERVAL_SECONDS = 60;
+
+    // checked by the measured code before doing any timing, see setEnabled
+    static volatile boolean enabled = Boolean.getBoolean("minesweeper.metrics");
+
+    private static final GameMetrics INSTANCE = new GameMetrics();
+
+    private final Histogram moveNanos = new Histogram();
+    private final Histogram revealedPerMove = new Histogram();
+    private final Histogram floodFillNanos = new Histogram();
+    private final Histogram floodFillSize = new Histogram();
+    private final Histogram saveNanos = new Histogram();
+    private final Histogram saveBytes = new Histogram();
+    private final Histogram loadNanos = new Histogram();
+    private final Histogram paintNanos = new Histogram();
+
+    private long logInterval = LOG_INTERVAL_SECONDS;
+    private ScheduledExecutorService logger = null; // started the first time it's needed
+    private ScheduledFuture<?> logTask = null; // null while summaries aren't being printed
+    private long loggedMoves = 0; // moves covered by the last summary
+    private long loggedPaints = 0; // paints covered by the last summary
+
+    /**
+     * Gets the game metrics.
+     *
+     * @return the game metrics
+     */
+    public static GameMetrics get() {
+        return INSTANCE;
+    }
+
+    private GameMetrics() {
+        if (enabled) {
+            scheduleLog();
+        }
+    }
+
+    /**
+     * Registers the game metrics with the platform MBean server under OBJECT_NAME, unless they
+     * already are.
+     */
+    public static void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (JMException e) {
+            System.out.println("JMException: Registering metrics failed");
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public synchronized void setEnabled(boolean enabled) {
+        GameMetrics.enabled = enabled;
+        scheduleLog();
+    }
+
+    @Override
+    public synchronized long getLogIntervalSeconds() {
+        return logInterval;
+    }
+
+    @Override
+    public synchronized void setLogIntervalSeconds(long seconds) {
+        if (seconds < 0) {
+            throw new IllegalArgumentException("Invalid log interval: " + seconds);
+        }
+        logInterval = seconds;
+        scheduleLog();
+    }
+
+    /**
+     * Starts or stops printing summaries to match the settings.
+     */
+    private synchronized void scheduleLog() {
+        if (logTask != null) {
+            logTask.cancel(false);
+            logTask = null;
+        }
+        if (!enabled || logInterval == 0) {
+            return;
+        }
+        if (logger == null) {
+            logger = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "minesweeper-metrics");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        logTask = logger.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                log();
+            }
+        }, logInterval, logInterval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Prints a summary of everything recorded so far, unless nothing has happened since the last
+     * one.
+     */
+    private void log() {
+        long moves = moveNanos.getCount();
+        long paints = paintNanos.getCount();
+        if (moves == loggedMoves && paints == loggedPaints) {
+            return;
+        }
+        loggedMoves = moves;
+        loggedPaints = paints;
+        System.out.println(summary());
+    }
+
+    /**
+     * Sums up everything recorded so far in one line.
+     *
+     * @return the summary
+     */
+    public String summary() {
+        HistogramSnapshot revealed = revealedPerMove.snapshot();
+        HistogramSnapshot bytes = saveBytes.snapshot();
+        return "Metrics: moves " + times(moveNanos.snapshot()) +
+                String.format(", revealed/move mean %.1f max %d", revealed.getMean(),
+                        revealed.getMax()) +
+                ", flood fills " + times(floodFillNanos.snapshot()) +
+                ", saves " + times(saveNanos.snapshot()) +
+                String.format(" mean %.0f bytes", bytes.getMean()) +
+                ", loads " + times(loadNanos.snapshot()) +
+                ", paints " + times(paintNanos.snapshot()) +
+                ", pool hits " + getPoolHits() + " misses " + getPoolMisses();
+    }
+
+    /**
+     * Sums up a histogram of times in ns.
+     */
+    private static String times(HistogramSnapshot s) {
+        return String.format("%d (p50 %.1f us, p99 %.1f us, max %.1f us)", s.getCount(),
+                s.getP50() / 1e3, s.getP99() / 1e3, s.getMax() / 1e3);
+    }
+
+    /**
+     * Records a move.
+     *
+     * @param nanos time the move took
+     * @param revealed number of tiles it revealed
+     */
+    void recordMove(long nanos, int revealed) {
+        moveNanos.record(nanos);
+        revealedPerMove.record(revealed);
+    }
+
+    /**
+     * Records the reveal of a safe tile.
+     *
+     * @param nanos time the reveal took
+     * @param size number of tiles it uncovered
+     */
+    void recordFloodFill(long nanos, int size) {
+        floodFillNanos.record(nanos);
+        floodFillSize.record(size);
+    }
+
+    /**
+     * Records a save.
+     *
+     * @param nanos time the save took
+     * @param bytes number of bytes it wrote
+     */
+    void recordSave(long nanos, int bytes) {
+        saveNanos.record(nanos);
+        saveBytes.record(bytes);
+    }
+
+    /**
+     * Records a load.
+     *
+     * @param nanos time the load took
+     */
+    void recordLoad(long nanos) {
+        loadNanos.record(nanos);
+    }
+
+    /**
+     * Records a paint.
+     *
+     * @param nanos time the paint took
+     */
+    void recordPaint(long nanos) {
+        paintNanos.record(nanos);
+    }
+
+    @Override
+    public HistogramSnapshot getMoveNanos() {
+        return moveNanos.snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getRevealedPerMove() {
+        return revealedPerMove.snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getFloodFillNanos() {
+        return floodFillNanos.snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getFloodFillSize() {
+        return floodFillSize.snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getSaveNanos() {
+        return saveNanos.snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getSaveBytes() {
+        return saveBytes.snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getLoadNanos() {
+        return loadNanos.snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getPaintNanos() {
+        return paintNanos.snapshot();
+    }
+
+    @Override
+    public long getPoolHits() {
+        return BoardPool.get().getHits();
+    }
+
+    @Override
+    public long getPoolMisses() {
+        return BoardPool.get().getMisses();
+    }
+
+    @Override
+    public void reset() {
+        moveNanos.reset();
+        revealedPerMove.reset();
+        floodFillNanos.reset();
+        floodFillSize.reset();
+        saveNanos.reset();
+        saveBytes.reset();
+        loadNanos.reset();
+        paintNanos.reset();
+    }
+}
@@ -0,0 +1,91 @@
+package org.cis120.minesweeper;
+
+
+/**
+ * GameMetricsMXBean is the JMX view of GameMetrics, registered as
+ * org.cis120.minesweeper:type=GameMetrics. Times are in ns.
+ */
+public interface GameMetricsMXBean {
+
+    /**
+     * @return whether metrics are being recorded
+     */
+    boolean isEnabled();
+
+    /**
+     * Starts or stops recording metrics. Values recorded so far are kept.
+     *
+     * @param enabled true to record metrics
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * @return seconds between summaries printed to the log, 0 if they aren't printed
+     */
+    long getLogIntervalSeconds();
+
+    /**
+     * Sets how often a summary is printed to the log while metrics are enabled.
+     *
+     * @param seconds seconds between summaries, 0 to stop printing them
+     */
+    void setLogIntervalSeconds(long seconds);
+
+    /**
+     * @return time taken by each move (Minesweeper.playTurn), including saving it
+     */
+    HistogramSnapshot getMoveNanos();
+
+    /**
+     * @return number of tiles each move revealed
+     */
+    HistogramSnapshot getRevealedPerMove();
+
+    /**
+     * @return time taken by each reveal of a safe tile, including the flood fill from it
+     */
+    HistogramSnapshot getFloodFillNanos();
+
+    /**
+     * @return number of tiles each reveal of a safe tile uncovered
+     */
+    HistogramSnapshot getFloodFillSize();
+
+    /**
+     * @return time taken by each save that had something to save (handing the writes to the save
+     *         thread, not the writes themselves)
+     */
+    HistogramSnapshot getSaveNanos();
+
+    /**
+     * @return number of bytes each save wrote
+     */
+    HistogramSnapshot getSaveBytes();
+
+    /**
+     * @return time taken by each load of a saved game
+     */
+    HistogramSnapshot getLoadNanos();
+
+    /**
+     * @return time taken by each paint of the board (GameBoard.paintComponent)
+     */
+    HistogramSnapshot getPaintNanos();
+
+    /**
+     * @return number of new games that took a ready-made board from the BoardPool, since the
+     *         program started (not cleared by reset)
+     */
+    long getPoolHits();
+
+    /**
+     * @return number of new games that wanted a board from the BoardPool but had to generate one
+     *         because none was ready, since the program started (not cleared by reset)
+     */
+    long getPoolMisses();
+
+    /**
+     * Clears every recorded value.
+     */
+    void reset();
+}
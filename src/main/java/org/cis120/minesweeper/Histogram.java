@@ -0,0 +1,125 @@
+package org.cis120.minesweeper;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Histogram counts non-negative values into log-linear buckets, the way HdrHistogram does: values
+ * below 2 * SUB_BUCKETS each get a bucket of their own, and every power of two above that is split
+ * into SUB_BUCKETS equal buckets, so any value is known to within about 3% (1 / SUB_BUCKETS). The
+ * buckets cover every long, and are all allocated up front, so recording a value never allocates
+ * and takes a handful of instructions. Values can be recorded from any thread.
+ */
+class Histogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS; // buckets per power of two
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS; // enough for Long.MAX_VALUE
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value.
+     *
+     * @param value value to record, negative values are counted as 0
+     */
+    void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        long m = max.get();
+        while (value > m && !max.compareAndSet(m, value)) {
+            m = max.get();
+        }
+    }
+
+    /**
+     * Clears every recorded value.
+     */
+    void reset() {
+        for (int b = 0; b < BUCKETS; b++) {
+            counts.set(b, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    /**
+     * @return number of values recorded
+     */
+    long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Copies out the values recorded so far. Values recorded while the copy is being made may or
+     * may not be included.
+     *
+     * @return summary of the recorded values
+     */
+    HistogramSnapshot snapshot() {
+        long n = 0;
+        long[] copy = new long[BUCKETS];
+        for (int b = 0; b < BUCKETS; b++) {
+            copy[b] = counts.get(b);
+            n += copy[b];
+        }
+        long m = max.get();
+        long sum = total.get();
+        return new HistogramSnapshot(n, n == 0 ? 0 : (double) sum / n, m,
+                percentile(copy, n, m, 0.5), percentile(copy, n, m, 0.9),
+                percentile(copy, n, m, 0.99));
+    }
+
+    /**
+     * Finds the value below which the given fraction of the values fall.
+     *
+     * @return the highest value in the bucket holding the percentile, at most the largest value
+     *         recorded
+     */
+    private static long percentile(long[] copy, long n, long max, double fraction) {
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * n));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += copy[b];
+            if (seen >= rank) {
+                return Math.min(max, highestIn(b));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Gets the bucket a value is counted in. Below 2 * SUB_BUCKETS, the bucket is the value.
+     * Above that, the value is shifted right until it has SUB_BITS + 1 bits, and the bucket is
+     * the shift (which power of two) combined with the bits that are left.
+     */
+    static int bucket(long value) {
+        int shift = Math.max(0, 64 - SUB_BITS - 1 - Long.numberOfLeadingZeros(value));
+        return (shift << SUB_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     * @return the highest value counted in bucket b
+     */
+    static long highestIn(int b) {
+        if (b < 2 * SUB_BUCKETS) {
+            return b;
+        }
+        int shift = (b >>> SUB_BITS) - 1;
+        long lowest = (long) (b & (SUB_BUCKETS - 1) | SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,82 @@
+package org.cis120.minesweeper;
+
+
+import java.beans.ConstructorProperties;
+
+
+/**
+ * HistogramSnapshot summarizes the values recorded in a metrics histogram at one point in time.
+ * Percentiles are accurate to within about 3%. Shown as a composite value (count, mean, max, p50,
+ * p90, p99) by JMX clients such as JConsole.
+ */
+public class HistogramSnapshot {
+
+    private final long count;
+    private final double mean;
+    private final long max;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+
+    /**
+     * Creates a snapshot.
+     *
+     * @param count number of values recorded
+     * @param mean average of the values
+     * @param max largest value
+     * @param p50 median
+     * @param p90 90th percentile
+     * @param p99 99th percentile
+     */
+    @ConstructorProperties({"count", "mean", "max", "p50", "p90", "p99"})
+    public HistogramSnapshot(long count, double mean, long max, long p50, long p90, long p99) {
+        this.count = count;
+        this.mean = mean;
+        this.max = max;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+    }
+
+    /**
+     * @return number of values recorded
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return average of the values, 0 if there are none
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * @return largest value
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return median
+     */
+    public long getP50() {
+        return p50;
+    }
+
+    /**
+     * @return 90th percentile
+     */
+    public long getP90() {
+        return p90;
+    }
+
+    /**
+     * @return 99th percentile
+     */
+    public long getP99() {
+        return p99;
+    }
+}
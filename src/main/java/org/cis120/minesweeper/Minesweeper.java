@@ -3,17 +3,35 @@ package org.cis120.minesweeper;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 
 public class Minesweeper {
 
-    // parameters for the game
+    // default parameters for the game
     public static final int GRID_WIDTH = 16;
     public static final int GRID_HEIGHT = 16;
     public static final int NUM_MINES = 24;
-    private int[][] gameBoard;
-    private boolean[][] bombLocations;
+
+    // most tiles a board can have, so a move (tile index and click) fits in an int, see MoveLog
+    public static final int MAX_TILES = (1 << 30) - 1;
+
+    // parameters for the current board (see setBoardConfig)
+    private int width;
+    private int height;
+    private int numMines;
+
+    // board state, one byte per cell stored row-major (index = y * width + x). The low four bits
+    // hold the number of adjacent bombs, computed when the bombs are placed, the upper bits are
+    // flags below (also used by SaveJournal to pack the board)
+    private byte[] cells;
+    static final int ADJ_MASK = 0x0F;
+    static final int REVEALED = 0x10;
+    static final int FLAGGED = 0x20;
+    static final int MINE = 0x40;
 
     // arrays used for neighbor-checking, looping over arrays and adding their values to current
     // position gives the coordinates to a neighbor (cdx and cdy for cardinal directions, dx and dy
@@ -23,25 +41,151 @@ public class Minesweeper {
     private final int[] cdx = {1, -1, 0, 0};
     private final int[] cdy = {0, 0, 1, -1};
 
+    // work queue for floodReveal, a ring buffer whose length is a power of two. Kept between moves
+    // so revealing an opening doesn't allocate once the queue has grown large enough
+    private int[] floodQueue = new int[256];
+    private int floodMask = floodQueue.length - 1;
+
     // constants that represent what's on each tile in the board
     public static final int HIDDEN = -1;
     public static final int FLAG = -2;
     public static final int BOMB = -3;
 
-    private static int curState = 0; // 0 if game is ongoing, 1 if win, -1 if loss,
-                                     // 2 if replaying win, -2 if replaying loss, 3 if replaying
-                                     // ongoing game
-    private List<Integer[]> moves = new ArrayList<>(); // stores the moves the player made in
-                                                       // the current game
-    private static int curMove = 0;  // current move in replay
+    // whether this game's moves, saves and loads are recorded in GameMetrics and as JFR events,
+    // see setInstrumented
+    private boolean instrumented = true;
+    private boolean events = GameEvents.AVAILABLE; // whether JFR events are emitted
+
+    private int curState = 0; // 0 if game is ongoing, 1 if win, -1 if loss,
+                              // 2 if replaying win, -2 if replaying loss, 3 if replaying
+                              // ongoing game
+    private MoveLog moves = new MoveLog(); // stores the moves the player made in the current game
+    private int curMove = 0;  // current move in replay
+
+    // running totals kept up to date by every reveal so the game state is known without scanning
+    // the board
+    private int hiddenSafe; // number of non-bomb tiles that haven't been revealed yet
+    private boolean detonated; // whether the player has revealed a bomb
+
+    // tiles changed by the latest change to the board, see getLastChanges
+    private int[] changed = new int[64];
+    private int changedCount = 0;
+    private boolean changedAll = false; // whether the whole board changed
+    private int stateBefore = 0; // game state before the latest change
+    private ChangeSet lastChanges = null; // built from the above when first asked for
+    private final List<BoardListener> listeners = new CopyOnWriteArrayList<>();
+
+    private SplittableRandom rng; // source of seeds for new boards, owned by this game
+    private long seed; // seed the current bomb locations were generated from
+    // save files for the game, see saveGame and setSavePath. Games don't save unless given a
+    // path, so only the game being played (see RunMinesweeper) writes to SAVE_PATH
+    public static final String SAVE_PATH = "files/minesweeper_save";
+    private static final int SNAPSHOT_INTERVAL = 256; // fewest moves between board snapshots
+    private String savePath = null;
+    private SaveJournal journal = null; // null if saving is turned off
+    private long saveInterval = 0; // see setSaveInterval
+    private boolean journalStale = true; // whether the journal belongs to an earlier board
+    private int savedMoves = 0; // number of moves written to the journal
+    private int snapshotMoves = 0; // number of moves covered by the latest snapshot
+
+    // board checkpoints taken while replaying, checkpoint k is the board after
+    // k * checkpointInterval moves
+    private static final int CHECKPOINT_INTERVAL = 64;
+    private int checkpointInterval = CHECKPOINT_INTERVAL;
+    private final List<Checkpoint> checkpoints = new ArrayList<>();
+
+    /**
+     * Checkpoint holds a copy of the board and its running totals partway through a replay.
+     */
+    private static class Checkpoint {
+        byte[] cells;
+        int hiddenSafe;
+        boolean detonated;
+    }
+
+    private boolean safeOpening = false; // whether the first reveal also clears the 8 tiles around
+                                         // it, rather than just the tile itself
+    private boolean noGuess = false; // whether new boards must be solvable without guessing
+    private int startTile = -1; // tile a no-guess board is solved from, -1 for other boards
+    private boolean useBoardPool = false; // whether reset takes ready-made boards from BoardPool
 
     /**
-     * Constructor sets up game state.
+     * Constructor sets up game state with the default board parameters.
      */
     public Minesweeper() {
+        this(GRID_WIDTH, GRID_HEIGHT, NUM_MINES);
+    }
+
+    /**
+     * Constructor sets up game state for a board of the given size.
+     *
+     * @param width number of columns on the board
+     * @param height number of rows on the board
+     * @param numMines number of bombs placed on the board
+     */
+    public Minesweeper(int width, int height, int numMines) {
+        rng = new SplittableRandom();
+        setBoardConfig(width, height, numMines);
+    }
+
+    /**
+     * Constructor sets up game state for a board of the given size, generating every board from
+     * the given seed so that the sequence of boards is reproducible.
+     *
+     * @param width number of columns on the board
+     * @param height number of rows on the board
+     * @param numMines number of bombs placed on the board
+     * @param seed seed for the random number generator
+     */
+    public Minesweeper(int width, int height, int numMines, long seed) {
+        rng = new SplittableRandom(seed);
+        setBoardConfig(width, height, numMines);
+    }
+
+    /**
+     * Changes the board parameters and starts a new game on the resized board.
+     *
+     * @param width number of columns on the board
+     * @param height number of rows on the board
+     * @param numMines number of bombs placed on the board
+     * @throws IllegalArgumentException if the board is empty or has more than MAX_TILES tiles, or
+     *                                  the number of bombs is negative or more than the tiles
+     */
+    public void setBoardConfig(int width, int height, int numMines) {
+        if (width <= 0 || height <= 0 || (long) width * height > MAX_TILES) {
+            throw new IllegalArgumentException("Invalid board size: " + width + "x" + height);
+        }
+        if (numMines < 0 || numMines > width * height) {
+            throw new IllegalArgumentException("Invalid number of mines: " + numMines);
+        }
+        this.width = width;
+        this.height = height;
+        this.numMines = numMines;
+        cells = new byte[width * height];
         reset(false);
     }
 
+    /**
+     * @return number of columns on the board
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return number of rows on the board
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return number of bombs on the board
+     */
+    public int getNumMines() {
+        return numMines;
+    }
+
     /**
      * playTurn allows players to play a turn. Returns true if the move is
      * successful and false if a player selects a tile that is already revealed.
@@ -51,93 +195,397 @@ public class Minesweeper {
      * @return whether the turn was successful
      */
     public boolean playTurn(int x, int y, boolean isLeftClick) {
-        if (x < 0 || x >= GRID_WIDTH || y < 0 || y >= GRID_HEIGHT) { // tile location out of bounds
+        if (instrumented && GameMetrics.enabled) {
+            long start = System.nanoTime();
+            int hiddenBefore = hiddenSafe;
+            boolean played = takeTurn(x, y, isLeftClick);
+            if (played) {
+                GameMetrics.get().recordMove(System.nanoTime() - start, hiddenBefore - hiddenSafe);
+            }
+            return played;
+        }
+        return takeTurn(x, y, isLeftClick);
+    }
+
+    /**
+     * Does the work of playTurn.
+     *
+     * @param x x coordinate of tile
+     * @param y y coordinate of tile
+     * @return whether the turn was successful
+     */
+    private boolean takeTurn(int x, int y, boolean isLeftClick) {
+        if (x < 0 || x >= width || y < 0 || y >= height) { // tile location out of bounds
             return false;
         }
-        if (gameBoard[x][y] != FLAG && gameBoard[x][y] != HIDDEN) { // tile already revealed
+        int i = y * width + x;
+        if ((cells[i] & REVEALED) != 0) { // tile already revealed
             return false;
         }
 
-        if (isLeftClick) {
-            if (gameBoard[x][y] == FLAG) { // prevent player from revealing flags (need to
-                                           // un-flag first
-                return true;
-            }
-            if (bombLocations[x][y]) { // player clicked on a tile that has a bomb
-                if (moves.size() == 0) { // if this is the player's first move, regenerate the bomb
-                                         // locations so the player's first move isn't on a bomb
-                    reset(false);
-                    return playTurn(x, y, isLeftClick);
-                }
-                gameBoard[x][y] = BOMB;
-            } else { // player clicked on a tile that doesn't have a bomb
-                gameBoard[x][y] = HIDDEN;
-                int num = getNum(x, y); // get number of bombs around tile
-                if (num == 0) { // empty tile, reveal all adjacent non-bomb tiles
-                    dfs(x, y);
-                } else {
-                    gameBoard[x][y] = num;
-                }
-            }
-        } else {
-            if (gameBoard[x][y] == FLAG) { // un-flag tile
-                gameBoard[x][y] = HIDDEN;
-            } else { // flag tile
-                gameBoard[x][y] = FLAG;
-            }
+        if (isLeftClick && (cells[i] & FLAGGED) != 0) { // prevent player from revealing flags
+                                                         // (need to un-flag first)
+            return true;
         }
+
+        GameEvents.Move event = null;
+        if (events) {
+            event = new GameEvents.Move();
+            event.begin();
+        }
+        int hiddenBefore = hiddenSafe;
+        beginChanges();
+        applyMove(i, isLeftClick);
         if (curState == 0) { // current game is still in progress, add move to list of moves
-            moves.add(new Integer[]{x, y, isLeftClick ? 1 : 0});
+            moves.add(i, isLeftClick);
         }
         updateState();
         saveGame();
+        endChanges();
+        if (events && event.shouldCommit()) {
+            event.x = x;
+            event.y = y;
+            event.reveal = isLeftClick;
+            event.revealed = hiddenBefore - hiddenSafe;
+            event.state = curState;
+            event.commit();
+        }
         return true;
     }
 
     /**
-     * dfs performs flood-fill through the board to reveal all adjacent empty tiles as well as the
-     * tiles next to empty tiles that don't contain bombs.
+     * applyMove reveals or flags/un-flags tile i without recording the move or updating the game
+     * state. The move must be valid (tile i is hidden, and not flagged if revealing).
      *
-     * @param x current x coordinate
-     * @param y current y coordinate
+     * @param i index of tile
+     * @param isLeftClick true to reveal the tile, false to flag or un-flag it
      */
-    private void dfs(int x, int y) {
-        if (x < 0 || x >= GRID_WIDTH || y < 0 || y >= GRID_HEIGHT) { // x or y out of bounds
-            return;
+    private void applyMove(int i, boolean isLeftClick) {
+        if (isLeftClick) {
+            if (hiddenSafe == cells.length - numMines) { // if this is the player's first reveal,
+                                                         // move bombs away so it isn't on a bomb
+                protectFirstClick(i % width, i / width, safeOpening ? 1 : 0);
+            }
+            if ((cells[i] & MINE) != 0) { // player clicked on a tile that has a bomb
+                cells[i] |= REVEALED;
+                addChanged(i);
+                detonated = true;
+            } else { // player clicked on a tile that doesn't have a bomb
+                // reveal tile, and all adjacent non-bomb tiles if it's empty
+                hiddenSafe -= instrumented && GameMetrics.enabled ? timedFloodReveal(i)
+                        : floodReveal(i);
+            }
+        } else {
+            cells[i] ^= FLAGGED; // flag or un-flag tile
+            addChanged(i);
         }
-        if (bombLocations[x][y] || gameBoard[x][y] != HIDDEN) { // current position is bomb or not
-                                                                // hidden
-            return;
+    }
+
+    /**
+     * Calls floodReveal, recording how long it took and how many tiles it revealed.
+     *
+     * @param start index of the tile to reveal
+     * @return number of tiles revealed
+     */
+    private int timedFloodReveal(int start) {
+        long t = System.nanoTime();
+        int revealed = floodReveal(start);
+        GameMetrics.get().recordFloodFill(System.nanoTime() - t, revealed);
+        return revealed;
+    }
+
+    /**
+     * floodReveal reveals tile i and, if it is an empty tile, performs a breadth-first flood-fill
+     * through the board to reveal all adjacent empty tiles as well as the tiles next to empty tiles
+     * that don't contain bombs. Uses an explicit queue rather than recursion so large openings
+     * can't overflow the stack.
+     *
+     * @param start index of the tile to reveal (must be hidden and not a bomb)
+     * @return number of tiles revealed
+     */
+    private int floodReveal(int start) {
+        GameEvents.FloodFill event = null;
+        if (events) {
+            event = new GameEvents.FloodFill();
+            event.begin();
         }
-        int num = getNum(x, y);
-        gameBoard[x][y] = num;
-        if (num == 0) { // current position is an empty tile, recurse to neighbors
-            for (int k = 0; k < 4; k++) { // call dfs on neighbors in the 4 cardinal directions
-                dfs(x + cdx[k], y + cdy[k]);
+        int revealed = fill(start);
+        if (events && event.shouldCommit()) {
+            event.x = start % width;
+            event.y = start / width;
+            event.size = revealed;
+            event.commit();
+        }
+        return revealed;
+    }
+
+    /**
+     * Does the work of floodReveal.
+     *
+     * @param start index of the tile to reveal
+     * @return number of tiles revealed
+     */
+    private int fill(int start) {
+        cells[start] |= REVEALED;
+        addChanged(start);
+        if ((cells[start] & ADJ_MASK) != 0) {
+            return 1;
+        }
+        int revealed = 1;
+        int head = 0;
+        int tail = 0;
+        floodQueue[tail++ & floodMask] = start;
+        while (head != tail) {
+            int i = floodQueue[head++ & floodMask];
+            int x = i % width;
+            int y = i / width;
+            for (int k = 0; k < 4; k++) { // visit neighbors in the 4 cardinal directions
+                int nx = x + cdx[k];
+                int ny = y + cdy[k];
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height) { // out of bounds
+                    continue;
+                }
+                int n = ny * width + nx;
+                if ((cells[n] & (MINE | REVEALED | FLAGGED)) != 0) { // bomb or not hidden
+                    continue;
+                }
+                cells[n] |= REVEALED;
+                addChanged(n);
+                revealed++;
+                if ((cells[n] & ADJ_MASK) == 0) { // empty tile, keep flooding from it
+                    if (tail - head > floodMask) {
+                        growFloodQueue(head, tail);
+                        tail -= head;
+                        head = 0;
+                    }
+                    floodQueue[tail++ & floodMask] = n;
+                }
             }
         }
+        return revealed;
     }
 
     /**
-     * Checks the 8 neighbors around a tile and counts the number of bombs.
+     * Doubles the capacity of the flood-fill queue, moving the pending entries to the front.
      *
-     * @param x x coordinate of tile
-     * @param y y coordinate of tile
-     * @return number of bombs around tile (x, y)
+     * @param head index of the first pending entry
+     * @param tail index one past the last pending entry
+     */
+    private void growFloodQueue(int head, int tail) {
+        int[] grown = new int[floodQueue.length * 2];
+        for (int k = head; k != tail; k++) {
+            grown[k - head] = floodQueue[k & floodMask];
+        }
+        floodQueue = grown;
+        floodMask = grown.length - 1;
+    }
+
+    /**
+     * Adds delta to the bomb count of the 8 neighbors around a tile, used when a bomb is placed on
+     * or removed from that tile.
+     *
+     * @param i index of tile
+     * @param delta 1 if a bomb was placed on the tile, -1 if one was removed
      */
-    private int getNum(int x, int y) {
-        int ret = 0;
+    private void addToNeighbors(int i, int delta) {
+        int x = i % width;
+        int y = i / width;
         for (int k = 0; k < 8; k++) {
             int nx = x + dx[k];
             int ny = y + dy[k];
-            if (nx < 0 || nx >= GRID_WIDTH || ny < 0 || ny >= GRID_HEIGHT) {
+            if (nx < 0 || nx >= width || ny < 0 || ny >= height) {
                 continue;
             }
-            if (bombLocations[nx][ny]) {
-                ret += 1;
+            cells[ny * width + nx] += delta;
+        }
+    }
+
+    /**
+     * Recomputes the number of bombs around every tile from the bomb locations.
+     */
+    private void computeAdjacency() {
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] &= ~ADJ_MASK;
+        }
+        for (int i = 0; i < cells.length; i++) {
+            if ((cells[i] & MINE) != 0) {
+                addToNeighbors(i, 1);
+            }
+        }
+    }
+
+    /**
+     * Moves a bomb from one tile to another, updating the bomb counts of the tiles around both.
+     *
+     * @param from index of a tile with a bomb
+     * @param to index of a tile without a bomb
+     */
+    private void moveMine(int from, int to) {
+        cells[from] &= ~MINE;
+        addToNeighbors(from, -1);
+        cells[to] |= MINE;
+        addToNeighbors(to, 1);
+    }
+
+    /**
+     * Makes sure the player's first reveal at (x, y) is safe by moving any bomb on that tile (and,
+     * with a radius of 1, on the 8 tiles around it) somewhere else. Only the offending bombs
+     * move, so the rest of the board is unchanged. If the board is too full to make room, the
+     * remaining bombs are left in place.
+     *
+     * @param x x coordinate of tile
+     * @param y y coordinate of tile
+     * @param r radius of the square around (x, y) to clear
+     */
+    private void protectFirstClick(int x, int y, int r) {
+        int x0 = Math.max(0, x - r);
+        int x1 = Math.min(width - 1, x + r);
+        int y0 = Math.max(0, y - r);
+        int y1 = Math.min(height - 1, y + r);
+        SplittableRandom random = null;
+        for (int ny = y0; ny <= y1; ny++) {
+            for (int nx = x0; nx <= x1; nx++) {
+                int i = ny * width + nx;
+                if ((cells[i] & MINE) == 0) {
+                    continue;
+                }
+                if (random == null) { // derived from the board's seed so boards stay reproducible
+                    random = new SplittableRandom(seed ^ (y * (long) width + x));
+                }
+                int to = findFreeTile(random, x0, y0, x1, y1);
+                if (to < 0) { // no room left outside the protected area
+                    return;
+                }
+                moveMine(i, to);
+                checkpoints.clear(); // taken with the bombs where they were
+            }
+        }
+    }
+
+    /**
+     * Finds a tile without a bomb outside of the rectangle (x0, y0)-(x1, y1). Tries a few random
+     * tiles first, which almost always succeeds, then falls back to scanning the board.
+     *
+     * @param random random number generator to pick tiles with
+     * @param x0 left column of the rectangle
+     * @param y0 top row of the rectangle
+     * @param x1 right column of the rectangle
+     * @param y1 bottom row of the rectangle
+     * @return index of a free tile, or -1 if there is none
+     */
+    private int findFreeTile(SplittableRandom random, int x0, int y0, int x1, int y1) {
+        int start = 0;
+        for (int k = 0; k < 32; k++) {
+            start = random.nextInt(cells.length);
+            int tx = start % width;
+            int ty = start / width;
+            boolean inside = tx >= x0 && tx <= x1 && ty >= y0 && ty <= y1;
+            if (!inside && (cells[start] & MINE) == 0) {
+                return start;
+            }
+        }
+        for (int k = 0; k < cells.length; k++) {
+            int t = (start + k) % cells.length;
+            int tx = t % width;
+            int ty = t / width;
+            boolean inside = tx >= x0 && tx <= x1 && ty >= y0 && ty <= y1;
+            if (!inside && (cells[t] & MINE) == 0) {
+                return t;
             }
         }
-        return ret;
+        return -1;
+    }
+
+    /**
+     * Sets whether the player's first reveal also clears the 8 tiles around it, so that it always
+     * opens up an empty tile rather than just a number.
+     *
+     * @param safeOpening true to clear the tiles around the first reveal as well
+     */
+    public void setSafeOpening(boolean safeOpening) {
+        this.safeOpening = safeOpening;
+    }
+
+    /**
+     * Sets whether this game is recorded in GameMetrics and as JFR events. Games played in the
+     * background (by BoardGenerator, BoardPool and Simulator) turn it off, so they don't drown
+     * out the player's game.
+     *
+     * @param instrumented false to leave this game out of the metrics and events
+     */
+    void setInstrumented(boolean instrumented) {
+        this.instrumented = instrumented;
+        events = instrumented && GameEvents.AVAILABLE;
+    }
+
+    /**
+     * Sets whether new boards (from reset or resetWithSeed) must be solvable without guessing.
+     * A no-guess board is opened from its start tile (see getStartTile), which is always empty;
+     * from there, every tile can be proved safe or a bomb from what's revealed. Boards are found
+     * by trying candidate boards on several threads, see BoardGenerator. If no candidate can be
+     * solved (the board is too dense), an ordinary board is used and getStartTile returns -1.
+     * GameBoard outlines the start tile until the first tile is revealed.
+     *
+     * @param noGuess true to generate no-guess boards
+     */
+    public void setNoGuess(boolean noGuess) {
+        this.noGuess = noGuess;
+        if (useBoardPool) {
+            BoardPool.get().warm(width, height, numMines, noGuess);
+        }
+    }
+
+    /**
+     * Sets whether reset(false) takes a ready-made board from the shared BoardPool rather than
+     * generating one, which makes starting a new game instant even for big or no-guess boards.
+     * Boards from the pool come from the pool's own seeds, not this game's. resetWithSeed always
+     * generates the board itself.
+     *
+     * @param useBoardPool true to take boards from the pool
+     */
+    public void setUseBoardPool(boolean useBoardPool) {
+        this.useBoardPool = useBoardPool;
+        if (useBoardPool) {
+            BoardPool.get().warm(width, height, numMines, noGuess);
+        }
+    }
+
+    /**
+     * Hands the current board over to a BoardPool, leaving this game with an empty one. Only
+     * used on the pool's scratch games, right after resetWithSeed.
+     *
+     * @return the board
+     */
+    BoardPool.Board detachBoard() {
+        BoardPool.Board b = new BoardPool.Board(cells, seed, startTile);
+        cells = new byte[cells.length];
+        return b;
+    }
+
+    /**
+     * @return true if new boards are generated to be solvable without guessing
+     */
+    public boolean isNoGuess() {
+        return noGuess;
+    }
+
+    /**
+     * Gets the tile a no-guess board is meant to be opened from: the center of the board.
+     *
+     * @return index (y * width + x) of the start tile, or -1 if the board isn't a no-guess board
+     */
+    public int getStartTile() {
+        return startTile;
+    }
+
+    /**
+     * Gets the number of tiles without bombs that haven't been revealed yet; the player wins when
+     * this reaches 0.
+     *
+     * @return number of hidden non-bomb tiles
+     */
+    public int getSafeTilesLeft() {
+        return hiddenSafe;
     }
 
     /**
@@ -151,26 +599,37 @@ public class Minesweeper {
 
     /**
      * updateState updates the curState variable with 1 if the player won (revealed all non-bomb
-     * tiles), 0 if the game is still ongoing, and -1 if the player lost (revealed bomb).
+     * tiles), 0 if the game is still ongoing, and -1 if the player lost (revealed bomb). Runs in
+     * constant time using the totals maintained by playTurn.
      */
     public void updateState() {
         if (curState == 2 || curState == -2 || curState == 3) { // replay in progress
             return;
         }
-        int res = 1;
-        for (int x = 0; x < GRID_WIDTH; x++) {
-            for (int y = 0; y < GRID_HEIGHT; y++) {
-                if (gameBoard[x][y] == BOMB) { // player revealed bomb tile
-                    curState = -1;
-                    return;
-                } else { // non-bomb tile still hidden
-                    if (gameBoard[x][y] == HIDDEN && !bombLocations[x][y]) {
-                        res = 0;
-                    }
-                }
+        if (detonated) { // player revealed bomb tile
+            curState = -1;
+        } else if (hiddenSafe > 0) { // non-bomb tile still hidden
+            curState = 0;
+        } else {
+            curState = 1;
+        }
+    }
+
+    /**
+     * Recomputes hiddenSafe and detonated from the board, for when cells are set directly (such as
+     * when loading a save) rather than through playTurn.
+     */
+    private void recount() {
+        hiddenSafe = 0;
+        detonated = false;
+        for (int i = 0; i < cells.length; i++) {
+            int c = cells[i] & (MINE | REVEALED);
+            if (c == 0) {
+                hiddenSafe++;
+            } else if (c == (MINE | REVEALED)) {
+                detonated = true;
             }
         }
-        curState = res;
     }
 
     /**
@@ -181,21 +640,21 @@ public class Minesweeper {
      * @return true if there's a bomb on tile (x, y), false otherwise
      */
     public boolean isBomb(int x, int y) {
-        return bombLocations[x][y];
+        return (cells[y * width + x] & MINE) != 0;
     }
 
     /**
      * printGameBoard prints the current game board for debugging.
      */
     public void printGameBoard() {
-        for (int y = 0; y < GRID_HEIGHT; y++) {
-            for (int x = 0; x < GRID_WIDTH; x++) {
-                System.out.print(gameBoard[x][y]);
-                if (x < GRID_WIDTH - 1) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                System.out.print(getCell(x, y));
+                if (x < width - 1) {
                     System.out.print(" | ");
                 }
             }
-            if (y < GRID_HEIGHT - 1) {
+            if (y < height - 1) {
                 System.out.println("\n---------");
             }
         }
@@ -206,18 +665,18 @@ public class Minesweeper {
      * printBombLocations prints the bomb locations for debugging.
      */
     public void printBombLocations() {
-        for (int y = 0; y < GRID_HEIGHT; y++) {
-            for (int x = 0; x < GRID_WIDTH; x++) {
-                if (bombLocations[x][y]) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (isBomb(x, y)) {
                     System.out.print("B");
                 } else {
                     System.out.print("_");
                 }
-                if (x < GRID_WIDTH - 1) {
+                if (x < width - 1) {
                     System.out.print(" | ");
                 }
             }
-            if (y < GRID_HEIGHT - 1) {
+            if (y < height - 1) {
                 System.out.println("\n---------");
             }
         }
@@ -232,27 +691,194 @@ public class Minesweeper {
      * @param preserveData Whether the method should reset all data or not
      */
     public void reset(boolean preserveData) {
-        gameBoard = new int[GRID_WIDTH][GRID_HEIGHT];
-        for (int x = 0; x < GRID_WIDTH; x++) {
-            for (int y = 0; y < GRID_HEIGHT; y++) {
-                gameBoard[x][y] = HIDDEN; // reset all tiles to hidden
+        if (!preserveData) {
+            BoardPool.Board b = useBoardPool ? BoardPool.get().take(width, height, numMines,
+                    noGuess) : null;
+            if (b == null) {
+                resetWithSeed(rng.nextLong());
+                return;
             }
+            cells = b.cells; // swap in the ready-made board
+            seed = b.seed;
+            startTile = b.startTile;
+            startNewGame();
+            return;
         }
-        if (!preserveData) {
-            bombLocations = new boolean[GRID_WIDTH][GRID_HEIGHT];
-            for (int i = 0; i < NUM_MINES; i++) {  // set bomb locations randomly
-                int x = (int)(Math.random() * 16);
-                int y = (int)(Math.random() * 16);
-                if (bombLocations[x][y]) {
-                    i--;
-                } else {
-                    bombLocations[x][y] = true;
-                }
+        beginChanges();
+        hideAll();
+        changedAll = true;
+        endChanges();
+    }
+
+    /**
+     * Sets every tile back to hidden, keeping the bombs, and starts the replay from the first move.
+     */
+    private void hideAll() {
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] &= MINE | ADJ_MASK; // reset all tiles to hidden, keeping the bombs
+        }
+        hiddenSafe = cells.length - numMines;
+        detonated = false;
+        curMove = 0;
+    }
+
+    /**
+     * Starts a new game whose bomb locations are determined entirely by the given seed, so the
+     * same seed and board parameters always produce the same board. With setNoGuess, the board is
+     * the first no-guess board found from the seed.
+     *
+     * @param seed seed to generate the bomb locations from
+     */
+    public void resetWithSeed(long seed) {
+        startTile = -1;
+        Long found = null;
+        if (noGuess) {
+            int start = (height / 2) * width + width / 2;
+            found = BoardGenerator.get().generate(width, height, numMines, start, seed);
+            if (found != null) {
+                startTile = start;
             }
-            moves = new ArrayList<>();
-            curState = 0;
         }
+        if (found != null) { // lay out the board exactly as the generator tried it
+            placeMines(found);
+            protectFirstClick(startTile % width, startTile / width, 1);
+        } else {
+            placeMines(seed);
+        }
+        startNewGame();
+    }
+
+    /**
+     * Clears the moves and game state for a new game on the board in cells, which must have
+     * nothing revealed or flagged.
+     */
+    private void startNewGame() {
+        if (journal != null && !journalStale) { // write out the end of the previous game without
+                                                // waiting for it
+            SaveWorker.get().flush(journal);
+        }
+        beginChanges();
+        changedAll = true;
+        moves.clear();
+        checkpoints.clear();
+        journalStale = true; // new board gets a new journal once its first move is saved
+        savedMoves = 0;
+        curState = 0;
+        hiddenSafe = cells.length - numMines;
+        detonated = false;
         curMove = 0;
+        endChanges();
+    }
+
+    /**
+     * Adds a listener to be told about every change to the board from now on.
+     *
+     * @param listener listener to add
+     */
+    public void addBoardListener(BoardListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Stops telling a listener about changes to the board.
+     *
+     * @param listener listener to remove
+     */
+    public void removeBoardListener(BoardListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Gets what the latest change to the board did: the move just played, or the new game, load
+     * or replay step.
+     *
+     * @return the change set of the latest change
+     */
+    public ChangeSet getLastChanges() {
+        if (lastChanges == null) {
+            int n = changedAll ? 0 : changedCount;
+            int[] indices = Arrays.copyOf(changed, n);
+            int[] values = new int[n];
+            for (int k = 0; k < n; k++) {
+                values[k] = getCell(indices[k] % width, indices[k] / width);
+            }
+            lastChanges = new ChangeSet(width, indices, values, changedAll, stateBefore,
+                    curState);
+        }
+        return lastChanges;
+    }
+
+    /**
+     * Starts recording a new change to the board.
+     */
+    private void beginChanges() {
+        changedCount = 0;
+        changedAll = false;
+        stateBefore = curState;
+        lastChanges = null;
+    }
+
+    /**
+     * Records that tile i looks different than before the current change.
+     *
+     * @param i index of tile
+     */
+    private void addChanged(int i) {
+        if (changedCount == changed.length) {
+            changed = Arrays.copyOf(changed, changed.length * 2);
+        }
+        changed[changedCount++] = i;
+    }
+
+    /**
+     * Finishes recording a change to the board and tells the listeners about it.
+     */
+    private void endChanges() {
+        if (events && curState != stateBefore) {
+            GameEvents.StateChange event = new GameEvents.StateChange();
+            if (event.shouldCommit()) {
+                event.oldState = stateBefore;
+                event.newState = curState;
+                event.commit();
+            }
+        }
+        if (listeners.isEmpty()) {
+            return;
+        }
+        ChangeSet changes = getLastChanges();
+        for (BoardListener l : listeners) {
+            l.boardChanged(changes);
+        }
+    }
+
+    /**
+     * Gets the seed the current bomb locations were generated from.
+     *
+     * @return seed of the current board
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Clears the board and places numMines bombs uniformly at random using Floyd's sampling
+     * algorithm, which picks each bomb location exactly once so it takes O(numMines) time no matter
+     * how dense the board is.
+     *
+     * @param seed seed to generate the bomb locations from
+     */
+    private void placeMines(long seed) {
+        this.seed = seed;
+        SplittableRandom r = new SplittableRandom(seed);
+        Arrays.fill(cells, (byte) 0);
+        for (int j = cells.length - numMines; j < cells.length; j++) {
+            int c = r.nextInt(j + 1);
+            if ((cells[c] & MINE) != 0) { // already picked, so j hasn't been and can be used
+                c = j;
+            }
+            cells[c] |= MINE;
+            addToNeighbors(c, 1);
+        }
     }
 
     /**
@@ -265,7 +891,31 @@ public class Minesweeper {
      *         game board.
      */
     public int getCell(int x, int y) {
-        return gameBoard[x][y];
+        int c = cells[y * width + x];
+        if ((c & REVEALED) != 0) {
+            return (c & MINE) != 0 ? BOMB : c & ADJ_MASK;
+        }
+        return (c & FLAGGED) != 0 ? FLAG : HIDDEN;
+    }
+
+    /**
+     * Sets the visible contents of tile (x, y), keeping whether or not it holds a bomb.
+     *
+     * @param x x coordinate of tile
+     * @param y y coordinate of tile
+     * @param value HIDDEN, FLAG, BOMB, or the number of bombs around the tile
+     */
+    private void setCell(int x, int y, int value) {
+        int i = y * width + x;
+        int c = cells[i] & (MINE | ADJ_MASK);
+        if (value == FLAG) {
+            c |= FLAGGED;
+        } else if (value == BOMB) {
+            c |= MINE | REVEALED;
+        } else if (value >= 0) {
+            c |= REVEALED;
+        }
+        cells[i] = (byte) c;
     }
 
     /**
@@ -277,113 +927,500 @@ public class Minesweeper {
         if (curMove >= moves.size()) {
             return false;
         }
-        Integer[] move = moves.get(curMove);
-        curMove++;
-        playTurn(move[0], move[1], (move[2] == 1));
+        replayTo(curMove + 1);
         return curMove != moves.size();
     }
 
+    /**
+     * Undoes the last replayed move by decreasing curMove by one.
+     *
+     * @return false if the replay is back at the start, true otherwise
+     */
+    public boolean replayStepBackward() {
+        replayTo(curMove - 1);
+        return curMove != 0;
+    }
+
+    /**
+     * Sets the board to how it was after the given number of moves. Restores the closest
+     * checkpoint at or before that move and replays the moves after it, so a seek only replays at
+     * most one checkpoint interval of moves once the checkpoints up to that move have been taken.
+     *
+     * @param move number of moves to have played, clamped to the number of moves in the game
+     */
+    public void replaySeek(int move) {
+        replayTo(move);
+    }
+
+    /**
+     * Moves the replay to the given move and tells the listeners, for the replay methods above.
+     *
+     * @param move number of moves to have played
+     */
+    private void replayTo(int move) {
+        GameEvents.ReplayStep event = null;
+        if (events) {
+            event = new GameEvents.ReplayStep();
+            event.begin();
+        }
+        int from = curMove;
+        beginChanges();
+        seek(move);
+        endChanges();
+        if (events && event.shouldCommit()) {
+            event.fromMove = from;
+            event.toMove = curMove;
+            event.restored = changedAll;
+            event.commit();
+        }
+    }
+
+    /**
+     * Does the work of replaySeek, without telling the listeners.
+     *
+     * @param move number of moves to have played
+     */
+    private void seek(int move) {
+        int target = Math.max(0, Math.min(move, moves.size()));
+        if (target < curMove || target - curMove >= checkpointInterval) {
+            int k = Math.min(target / checkpointInterval, checkpoints.size() - 1);
+            if (k >= 0 && (target < curMove || k * checkpointInterval > curMove)) {
+                Checkpoint c = checkpoints.get(k);
+                System.arraycopy(c.cells, 0, cells, 0, cells.length);
+                hiddenSafe = c.hiddenSafe;
+                detonated = c.detonated;
+                curMove = k * checkpointInterval;
+                changedAll = true;
+            } else if (k < 0 && target < curMove) { // no checkpoints yet, start from a hidden board
+                hideAll();
+                changedAll = true;
+            }
+        }
+        while (curMove < target) {
+            replayMove();
+        }
+    }
+
+    /**
+     * Gets the number of moves played so far in the replay.
+     *
+     * @return current move in replay
+     */
+    public int getReplayMove() {
+        return curMove;
+    }
+
+    /**
+     * Gets the number of moves in the current game.
+     *
+     * @return number of moves
+     */
+    public int getMoveCount() {
+        return moves.size();
+    }
+
+    /**
+     * Sets how many moves apart replay checkpoints are taken. Smaller intervals make seeking
+     * faster but keep more copies of the board.
+     *
+     * @param interval moves between checkpoints
+     */
+    public void setReplayCheckpointInterval(int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Invalid checkpoint interval: " + interval);
+        }
+        checkpointInterval = interval;
+        checkpoints.clear();
+    }
+
+    /**
+     * Plays the current move of the replay without recording or saving it, taking a checkpoint
+     * first if one is due and hasn't been taken yet.
+     */
+    private void replayMove() {
+        if (curMove % checkpointInterval == 0 &&
+            curMove / checkpointInterval == checkpoints.size()) {
+            Checkpoint c = new Checkpoint();
+            c.cells = cells.clone();
+            c.hiddenSafe = hiddenSafe;
+            c.detonated = detonated;
+            checkpoints.add(c);
+        }
+        int move = moves.get(curMove);
+        curMove++;
+        applyMove(MoveLog.index(move), MoveLog.isReveal(move));
+    }
+
     /**
      * Starts replaying by setting curState (key on line 33).
      */
     public void startReplay() {
+        beginChanges();
         if (curState == 0) {
             curState = 3;
         } else {
             curState *= 2;
         }
+        endChanges();
     }
 
     /**
-     * Finishes replaying by setting curState (key on line 33) and setting curMove back to 0.
+     * Finishes replaying by setting the board back to how it was after the last move, setting
+     * curState (key on line 33) and setting curMove back to 0.
      */
     public void finishReplay() {
+        beginChanges();
+        seek(moves.size());
         if (curState == 3) {
             curState = 0;
         } else {
             curState /= 2;
         }
         curMove = 0;
+        endChanges();
     }
 
     /**
-     * Write the curState, board width and height, number of bombs, board, bomb locations, and
-     * list of moves into minesweeper_save.txt
+     * Saves any moves made since the last save by appending them to the journal in
+     * minesweeper_save.log, which takes constant time per move. Every so often (and on the first
+     * save of a new board) the whole board is also written to minesweeper_save.snap, so loading
+     * only has to replay the moves after the latest snapshot. The spacing between snapshots grows
+     * with the board so their cost stays constant per move on average.
+     *
+     * The writes themselves are handed to the SaveWorker thread, so this never waits on the disk;
+     * use flushSave to wait for them. If the worker's queue is full (the disk has stalled), the
+     * moves that didn't fit are saved with the next save instead.
      */
     public void saveGame() {
-        try {
-            BufferedWriter bw = new BufferedWriter(new FileWriter("files/minesweeper_save.txt"));
-            bw.write(String.valueOf(curState));
-            bw.newLine();
-            bw.write(GRID_WIDTH + " " + GRID_HEIGHT + " " + NUM_MINES);
-            bw.newLine();
-            for (int y = 0; y < GRID_HEIGHT; y++) {
-                for (int x = 0; x < GRID_WIDTH; x++) {
-                    bw.write(String.valueOf(gameBoard[x][y]));
-                    bw.write(" ");
-                }
-                bw.newLine();
+        if (instrumented && GameMetrics.enabled) {
+            long start = System.nanoTime();
+            int bytes = queueSave();
+            if (bytes > 0) {
+                GameMetrics.get().recordSave(System.nanoTime() - start, bytes);
             }
-            for (int y = 0; y < GRID_HEIGHT; y++) {
-                for (int x = 0; x < GRID_WIDTH; x++) {
-                    bw.write(String.valueOf(bombLocations[x][y] ? 1 : 0));
-                    bw.write(" ");
-                }
-                bw.newLine();
+            return;
+        }
+        queueSave();
+    }
+
+    /**
+     * Does the work of saveGame.
+     *
+     * @return number of bytes queued to be written, 0 if there was nothing to save
+     */
+    private int queueSave() {
+        if (journal == null || savedMoves == moves.size()) { // not saving, or nothing new to save
+            return 0;
+        }
+        GameEvents.Save event = null;
+        if (events) {
+            event = new GameEvents.Save();
+            event.begin();
+        }
+        int fromMove = savedMoves;
+        boolean snapshot = false;
+        int bytes = 0;
+        SaveWorker worker = SaveWorker.get();
+        if (journalStale) { // first save of this board, start over with a new journal
+            if (!worker.startJournal(journal, seed)) {
+                return 0; // the save queue is full, try again next time
             }
-            for (Integer[] move : moves) {
-                bw.write(String.valueOf(move[0]));
-                bw.write(" ");
-                bw.write(String.valueOf(move[1]));
-                bw.write(" ");
-                bw.write(String.valueOf(move[2]));
-                bw.newLine();
+            bytes += SaveJournal.JOURNAL_HEADER_LEN;
+            journalStale = false;
+            savedMoves = 0;
+            snapshotMoves = 0;
+        }
+        int previous = savedMoves == 0 ? 0 : moves.get(savedMoves - 1);
+        for (; savedMoves < moves.size(); savedMoves++) {
+            int move = moves.get(savedMoves);
+            if (!worker.appendMove(journal, move)) {
+                break; // the save queue is full, the rest are saved next time
             }
-            bw.close();
-        } catch (IOException e) {
-            System.out.println("IOException: Save game failed");
+            bytes += MoveLog.deltaLength(previous, move);
+            previous = move;
+        }
+        int interval = Math.max(SNAPSHOT_INTERVAL, cells.length / 64);
+        if (savedMoves == moves.size() &&
+                (snapshotMoves == 0 || savedMoves - snapshotMoves >= interval) &&
+                writeSnapshot()) {
+            bytes += SaveJournal.snapshotLength(cells.length);
+            snapshot = true;
+        }
+        if (events && event.shouldCommit()) {
+            event.moves = savedMoves - fromMove;
+            event.snapshot = snapshot;
+            event.bytes = bytes;
+            event.commit();
+        }
+        return bytes;
+    }
+
+    /**
+     * Compacts the save by writing a snapshot of the board as it stands, so that loading doesn't
+     * need to replay any moves from the journal.
+     */
+    public void compactSave() {
+        saveGame();
+        if (journal == null || journalStale || snapshotMoves == savedMoves) {
+            return; // not saving, nothing saved yet, or the snapshot is already up to date
+        }
+        writeSnapshot();
+    }
+
+    /**
+     * Saves any unsaved moves and waits until everything saved so far is on disk.
+     */
+    public void flushSave() {
+        saveGame();
+        if (journal == null) {
+            return;
+        }
+        SaveWorker.get().sync(journal);
+        while (savedMoves < moves.size()) { // the save queue was full, now it's empty
+            saveGame();
+            SaveWorker.get().sync(journal);
+        }
+    }
+
+    /**
+     * Sets where this game is saved, so several games can save side by side. The game's moves so
+     * far are written to the new location on the next save.
+     *
+     * @param basePath path of the save files without an extension (such as SAVE_PATH), or null to
+     *                 turn saving off (the default)
+     */
+    public void setSavePath(String basePath) {
+        if (journal != null) {
+            SaveWorker.get().sync(journal);
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.out.println("IOException: Save game failed");
+            }
+        }
+        savePath = basePath;
+        journal = basePath == null ? null : new SaveJournal(basePath);
+        if (journal != null) {
+            journal.setFlushInterval(saveInterval);
+        }
+        journalStale = true;
+        savedMoves = 0;
+    }
+
+    /**
+     * Sets how long saved moves may wait before being written to disk. With 0 (the default),
+     * every move is written as soon as the save thread gets to it; otherwise bursts of moves
+     * within the interval are written together.
+     *
+     * @param millis longest wait in ms
+     */
+    public void setSaveInterval(long millis) {
+        saveInterval = millis;
+        if (journal != null) {
+            journal.setFlushInterval(millis);
+        }
+    }
+
+    /**
+     * Queues a snapshot of the board covering every saved move.
+     *
+     * @return false if the save queue is full and the snapshot wasn't queued
+     */
+    private boolean writeSnapshot() {
+        SaveJournal.Snapshot s = new SaveJournal.Snapshot();
+        s.width = width;
+        s.height = height;
+        s.numMines = numMines;
+        s.seed = seed;
+        s.state = curState;
+        s.moveCount = savedMoves;
+        s.cells = cells.clone(); // the board keeps changing while the snapshot is written
+        if (!SaveWorker.get().writeSnapshot(journal, s)) {
+            return false;
         }
+        snapshotMoves = savedMoves;
+        return true;
     }
 
     /**
-     * Loads game save data from minesweeper_save.txt.
+     * Loads the game saved by saveGame: restores the board from the latest snapshot in
+     * minesweeper_save.snap and replays the moves in minesweeper_save.log made after it. Falls back
+     * to the older text save in minesweeper_save.txt if there is no snapshot.
      *
      * @return true if the load is successful, false otherwise (if this returns false, then we
      * have a new game)
      */
     public boolean loadGame() {
+        if (instrumented && GameMetrics.enabled) {
+            long start = System.nanoTime();
+            boolean loaded = load();
+            GameMetrics.get().recordLoad(System.nanoTime() - start);
+            return loaded;
+        }
+        return load();
+    }
+
+    /**
+     * Does the work of loadGame.
+     *
+     * @return true if the load is successful
+     */
+    private boolean load() {
+        if (journal == null) { // saving is turned off
+            return false;
+        }
+        SaveWorker.get().sync(journal); // make sure earlier saves have been written
+        GameEvents.Load event = null;
+        if (events) {
+            event = new GameEvents.Load();
+            event.begin();
+        }
+        long bytes = 0; // size of the save that was read
+        beginChanges();
         try {
-            BufferedReader br = new BufferedReader(new FileReader("files/minesweeper_save.txt"));
-            curState = Integer.parseInt(br.readLine());
-            String[] parameters = br.readLine().split(" ");
-            if (Integer.parseInt(parameters[0]) != GRID_WIDTH ||
-                Integer.parseInt(parameters[1]) != GRID_HEIGHT ||
-                Integer.parseInt(parameters[2]) != NUM_MINES) {
+            SaveJournal.Snapshot s = journal.readSnapshot();
+            if (s == null) {
+                changedAll = loadLegacyGame();
+                bytes = new File(savePath + ".txt").length();
+                return changedAll;
+            }
+            if (s.width != width || s.height != height || s.numMines != numMines) {
                 return false;
             }
+            MoveLog saved = journal.readMoves(s.seed, cells.length);
+            if (saved == null || saved.size() < s.moveCount) {
+                return false;
+            }
+            // everything read checks out, so nothing below can fail part way through restoring
+            System.arraycopy(s.cells, 0, cells, 0, cells.length);
+            computeAdjacency(); // snapshots only hold the bombs and which tiles are uncovered
+            seed = s.seed;
+            startTile = -1; // not saved, the board is already opened anyway
+            curState = s.state;
+            recount();
+            moves = saved;
+            checkpoints.clear();
+            MoveLog.Cursor c = moves.cursor(s.moveCount); // moves made after the snapshot
+            while (c.next()) {
+                applyMove(c.index(), c.isReveal());
+            }
+            updateState();
+            journalStale = false; // carry on appending to the journal just read
+            savedMoves = moves.size();
+            snapshotMoves = s.moveCount;
+            changedAll = true;
+            bytes = SaveJournal.snapshotLength(cells.length) + journal.getReadLength();
+            return true;
+        } catch (IOException e) {
+            System.out.println("IOException: Load game failed");
+            return false;
+        } finally {
+            endChanges();
+            if (events && event.shouldCommit()) {
+                event.success = changedAll; // set by every successful load
+                event.moves = changedAll ? moves.size() : 0;
+                event.bytes = changedAll ? bytes : 0;
+                event.commit();
+            }
+        }
+    }
 
-            for (int y = 0; y < GRID_HEIGHT; y++) {
-                String[] row = br.readLine().split(" ");
-                for (int x = 0; x < GRID_WIDTH; x++) {
-                    gameBoard[x][y] = Integer.parseInt(row[x]);
+    /**
+     * Loads game save data from minesweeper_save.txt, the text format saves were written in before
+     * the journal. The next save writes the game out in the new format. The whole file is read and
+     * checked before anything in the game is changed.
+     *
+     * @return true if the load is successful, false otherwise (if this returns false, then we
+     * have a new game)
+     */
+    private boolean loadLegacyGame() {
+        try (BufferedReader br = new BufferedReader(new FileReader(savePath + ".txt"))) {
+            String[] first = readFields(br, 1);
+            String[] parameters = readFields(br, 3);
+            if (first == null || parameters == null) {
+                return false;
+            }
+            int state = Integer.parseInt(first[0]);
+            if (!SaveJournal.isValidState(state) ||
+                Integer.parseInt(parameters[0]) != width ||
+                Integer.parseInt(parameters[1]) != height ||
+                Integer.parseInt(parameters[2]) != numMines) {
+                return false;
+            }
+
+            byte[] loaded = new byte[cells.length];
+            for (int y = 0; y < height; y++) { // tiles as getCell shows them
+                String[] row = readFields(br, width);
+                if (row == null) {
+                    return false;
+                }
+                for (int x = 0; x < width; x++) {
+                    int value = Integer.parseInt(row[x]);
+                    if (value == FLAG) {
+                        loaded[y * width + x] = FLAGGED;
+                    } else if (value == BOMB || value >= 0) {
+                        loaded[y * width + x] = REVEALED;
+                    }
                 }
             }
-            for (int y = 0; y < GRID_HEIGHT; y++) {
-                String[] row = br.readLine().split(" ");
-                for (int x = 0; x < GRID_WIDTH; x++) {
-                    bombLocations[x][y] = Integer.parseInt(row[x]) == 1;
+            for (int y = 0; y < height; y++) { // bombs
+                String[] row = readFields(br, width);
+                if (row == null) {
+                    return false;
+                }
+                for (int x = 0; x < width; x++) {
+                    if (Integer.parseInt(row[x]) == 1) {
+                        loaded[y * width + x] |= MINE;
+                    }
                 }
             }
+            MoveLog loadedMoves = new MoveLog();
             String line;
             while ((line = br.readLine()) != null) {
                 String[] move = line.split(" ");
-                moves.add(new Integer[]{Integer.parseInt(move[0]), Integer.parseInt(move[1]),
-                    Integer.parseInt(move[2])});
+                if (move.length < 3) {
+                    return false;
+                }
+                int x = Integer.parseInt(move[0]);
+                int y = Integer.parseInt(move[1]);
+                if (x < 0 || x >= width || y < 0 || y >= height) {
+                    return false;
+                }
+                loadedMoves.add(y * width + x, Integer.parseInt(move[2]) == 1);
             }
+
+            System.arraycopy(loaded, 0, cells, 0, cells.length);
+            curState = state;
+            moves = loadedMoves;
+            computeAdjacency();
+            recount();
+            checkpoints.clear();
+            startTile = -1;
+            journalStale = true;
+            savedMoves = 0;
             return true;
+        } catch (NumberFormatException e) { // not a save we wrote
+            return false;
         } catch (IOException e) {
             System.out.println("IOException: Load game failed");
             return false;
         }
     }
+
+    /**
+     * Reads a line of space-separated fields.
+     *
+     * @param br reader to read from
+     * @param count number of fields expected
+     * @return the fields, or null at the end of the file or if the line has too few
+     * @throws IOException if the line can't be read
+     */
+    private static String[] readFields(BufferedReader br, int count) throws IOException {
+        String line = br.readLine();
+        if (line == null) {
+            return null;
+        }
+        String[] fields = line.split(" ");
+        return fields.length < count ? null : fields;
+    }
 }
@@ -0,0 +1,247 @@
+package org.cis120.minesweeper;
+
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+
+/**
+ * MoveLog is the list of moves made in a game, stored as one int per move: the index of the tile
+ * shifted left by one, with the low bit set for a reveal (left click) and clear for a flag or
+ * un-flag (right click). Boards have at most Minesweeper.MAX_TILES tiles, so a packed move is
+ * never negative. It grows like an ArrayList, but recording a move is just an array store, so
+ * even a long game of flag toggles makes no garbage.
+ *
+ * For saving, each move is written as the difference from the move before it, zigzag encoded (so
+ * small negative differences are small numbers too) and written as a varint (7 bits a byte, the
+ * top bit set on every byte but the last). Moves tend to be close together on the board, so most
+ * take one or two bytes rather than the four of an int.
+ */
+class MoveLog {
+
+    private int[] moves;
+    private int size = 0;
+
+    /**
+     * Creates an empty move log.
+     */
+    MoveLog() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty move log with room for the given number of moves before it has to grow.
+     *
+     * @param capacity number of moves
+     */
+    MoveLog(int capacity) {
+        moves = new int[Math.max(1, capacity)];
+    }
+
+    /**
+     * Packs a move into an int.
+     *
+     * @param index index of the tile
+     * @param reveal true for a reveal, false for a flag or un-flag
+     * @return the packed move
+     */
+    static int pack(int index, boolean reveal) {
+        return index << 1 | (reveal ? 1 : 0);
+    }
+
+    /**
+     * @return index of the tile of a packed move
+     */
+    static int index(int move) {
+        return move >>> 1;
+    }
+
+    /**
+     * @return true if a packed move is a reveal, false if it flags or un-flags a tile
+     */
+    static boolean isReveal(int move) {
+        return (move & 1) != 0;
+    }
+
+    /**
+     * Adds a move to the end of the log.
+     *
+     * @param index index of the tile
+     * @param reveal true for a reveal, false for a flag or un-flag
+     */
+    void add(int index, boolean reveal) {
+        addPacked(pack(index, reveal));
+    }
+
+    /**
+     * Adds a packed move to the end of the log.
+     *
+     * @param move the packed move
+     */
+    void addPacked(int move) {
+        if (size == moves.length) {
+            moves = Arrays.copyOf(moves, moves.length * 2);
+        }
+        moves[size++] = move;
+    }
+
+    /**
+     * Gets a move.
+     *
+     * @param k position of the move in the log
+     * @return the packed move
+     */
+    int get(int k) {
+        if (k < 0 || k >= size) {
+            throw new IndexOutOfBoundsException("Move " + k + " of " + size);
+        }
+        return moves[k];
+    }
+
+    /**
+     * @return number of moves in the log
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Removes every move, keeping the room they took up.
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Gets a cursor over the moves from the given position on. The cursor reads straight out of
+     * the log, so it sees moves added after it was made.
+     *
+     * @param from position of the first move to visit
+     * @return the cursor
+     */
+    Cursor cursor(int from) {
+        return new Cursor(from);
+    }
+
+    /**
+     * Cursor steps through a log's moves without copying them.
+     */
+    class Cursor {
+        private int next; // position of the next move
+        private int move; // current move
+
+        private Cursor(int from) {
+            next = from;
+        }
+
+        /**
+         * Moves on to the next move.
+         *
+         * @return false if there are no more moves
+         */
+        boolean next() {
+            if (next >= size) {
+                return false;
+            }
+            move = moves[next++];
+            return true;
+        }
+
+        /**
+         * @return position of the current move in the log
+         */
+        int position() {
+            return next - 1;
+        }
+
+        /**
+         * @return index of the tile of the current move
+         */
+        int index() {
+            return MoveLog.index(move);
+        }
+
+        /**
+         * @return true if the current move is a reveal
+         */
+        boolean isReveal() {
+            return MoveLog.isReveal(move);
+        }
+    }
+
+    /**
+     * Gets how many bytes writeDelta takes to write a move.
+     *
+     * @param previous the move before it, or 0 for the first move
+     * @param move the packed move
+     * @return number of bytes, 1 to 5
+     */
+    static int deltaLength(int previous, int move) {
+        int v = zigzag(move - previous);
+        int len = 1;
+        while ((v & ~0x7F) != 0) {
+            v >>>= 7;
+            len++;
+        }
+        return len;
+    }
+
+    /**
+     * Writes a move as a varint of its difference from the move before it.
+     *
+     * @param out where to write the move
+     * @param previous the move before it, or 0 for the first move
+     * @param move the packed move
+     * @return number of bytes written
+     * @throws IOException if the move can't be written
+     */
+    static int writeDelta(DataOutput out, int previous, int move) throws IOException {
+        int v = zigzag(move - previous);
+        int len = 1;
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+            len++;
+        }
+        out.writeByte(v);
+        return len;
+    }
+
+    /**
+     * Reads a move written by writeDelta.
+     *
+     * @param buf where to read the move from, left just after it
+     * @param previous the move before it, or 0 for the first move
+     * @return the packed move, or -1 if buf ends partway through it or it isn't a valid move
+     *         (buf is left where it was then)
+     */
+    static int readDelta(ByteBuffer buf, int previous) {
+        int start = buf.position();
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!buf.hasRemaining()) {
+                break;
+            }
+            int b = buf.get();
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                int move = previous + ((v >>> 1) ^ -(v & 1)); // undo the zigzag
+                if (move >= 0) {
+                    return move;
+                }
+                break;
+            }
+        }
+        buf.position(start);
+        return -1;
+    }
+
+    /**
+     * Zigzag encodes a number: 0, -1, 1, -2, 2... become 0, 1, 2, 3, 4...
+     */
+    private static int zigzag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+}
@@ -0,0 +1,709 @@
+package org.cis120.minesweeper;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * ProbabilityEngine works out the chance that each hidden tile is a bomb, from what the player can
+ * see and what a Solver has already proved, for when there is no safe tile left and the player has
+ * to guess.
+ *
+ * The unknown tiles next to revealed numbers (the frontier) are split into components: groups of
+ * tiles that share constraints with each other but not with any other group, so each can be
+ * solved on its own. Every assignment of bombs to a component's tiles that agrees with its
+ * numbers is enumerated (components are enumerated in parallel on the fork-join common pool),
+ * counting how many assignments use each number of bombs. The components are then combined with
+ * the rest of the board: a way of placing t bombs on the frontier leaves the remaining bombs to be
+ * spread over the unknown tiles away from the frontier, which can be done in C(interior, bombs
+ * left - t) ways, and that is how much each assignment is weighted by.
+ *
+ * Enumerating is the expensive part, so results are kept per component and reused for every
+ * component that comes out the same after a move; a move usually only changes the components
+ * around it.
+ */
+public class ProbabilityEngine {
+
+    // a component whose enumeration visits more assignments than this is estimated instead
+    private static final long MAX_NODES = 1L << 22;
+    // a component with more tiles than this is estimated without trying to enumerate it
+    private static final int MAX_CELLS = 512;
+    // past this many frontier tiles, the weighting of the rest of the board is approximated
+    private static final int EXACT_FRONTIER_LIMIT = 4096;
+
+    // offsets to the 8 neighbors of a tile
+    private static final int[] DX = {-1, 0, 1, -1, 1, -1, 0, 1};
+    private static final int[] DY = {-1, -1, -1, 0, 0, 1, 1, 1};
+
+    private final Minesweeper ms;
+    private final Solver solver;
+    private int width;
+    private int height;
+
+    private Map<Key, Component> cache = new HashMap<>(); // components from the last compute
+    private int[] local = new int[0]; // frontier tile index -> position in frontier, or -1
+    private int[] frontier = new int[0]; // unknown tiles next to a revealed number
+    private double[] frontierProb = new double[0]; // chance each frontier tile is a bomb
+    private int frontierSize = 0;
+    private double interiorProb = 0; // chance each other unknown tile is a bomb
+    private boolean exact = true;
+    private int enumerated = 0; // components enumerated by the last compute
+
+    /**
+     * Component is one independent group of frontier tiles with the constraints on them, and the
+     * result of enumerating it.
+     */
+    private static class Component {
+        int[] cells; // tile indices, ascending
+        int[] cons; // constraint tile indices, ascending
+        int[] need; // bombs each constraint needs among its unknown neighbors
+        int[][] vars; // positions in cells of each constraint's unknown neighbors
+
+        double[] ways; // ways[k]: number of assignments with k bombs (scaled)
+        double[][] mineWays; // mineWays[k][c]: how many of those put a bomb on cell c (scaled),
+                             // null if there are none with k bombs
+        boolean exact = true;
+
+        private int[][] cellCons; // constraints each cell is in
+        private int[] order; // cells in the order they are assigned
+        private int[] left; // bombs each constraint still needs
+        private int[] open; // unassigned cells of each constraint
+        private boolean[] assigned;
+        private long nodes;
+
+        /**
+         * Enumerates every assignment that agrees with the constraints.
+         */
+        void enumerate() {
+            int n = cells.length;
+            ways = new double[n + 1];
+            mineWays = new double[n + 1][];
+            buildOrder();
+            left = need.clone();
+            open = new int[cons.length];
+            for (int c = 0; c < cons.length; c++) {
+                open[c] = vars[c].length;
+            }
+            assigned = new boolean[n];
+            nodes = 0;
+            if (n > MAX_CELLS || !assign(0, 0)) {
+                estimate();
+            }
+            double max = 0;
+            for (double w : ways) {
+                max = Math.max(max, w);
+            }
+            if (max > 0) { // only ratios matter, keep the numbers in range
+                for (int k = 0; k <= n; k++) {
+                    ways[k] /= max;
+                    for (int c = 0; mineWays[k] != null && c < n; c++) {
+                        mineWays[k][c] /= max;
+                    }
+                }
+            }
+            cellCons = null;
+            order = null;
+            left = null;
+            open = null;
+            assigned = null;
+        }
+
+        /**
+         * Orders the cells breadth-first through shared constraints, so each constraint has all
+         * its cells assigned soon after its first one and bad assignments are cut off early.
+         */
+        private void buildOrder() {
+            int n = cells.length;
+            int[] counts = new int[n];
+            for (int[] v : vars) {
+                for (int c : v) {
+                    counts[c]++;
+                }
+            }
+            cellCons = new int[n][];
+            for (int c = 0; c < n; c++) {
+                cellCons[c] = new int[counts[c]];
+            }
+            Arrays.fill(counts, 0);
+            for (int con = 0; con < vars.length; con++) {
+                for (int c : vars[con]) {
+                    cellCons[c][counts[c]++] = con;
+                }
+            }
+            order = new int[n];
+            boolean[] seen = new boolean[n];
+            int head = 0;
+            int tail = 0;
+            for (int s = 0; s < n; s++) {
+                if (seen[s]) {
+                    continue;
+                }
+                seen[s] = true;
+                order[tail++] = s;
+                while (head < tail) {
+                    int c = order[head++];
+                    for (int con : cellCons[c]) {
+                        for (int o : vars[con]) {
+                            if (!seen[o]) {
+                                seen[o] = true;
+                                order[tail++] = o;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Tries both values for the cell at position pos in the order, then the cells after it.
+         *
+         * @param pos position in order of the cell to assign
+         * @param mines bombs placed so far
+         * @return false if the enumeration gave up because it was taking too long
+         */
+        private boolean assign(int pos, int mines) {
+            if (++nodes > MAX_NODES) {
+                return false;
+            }
+            if (pos == order.length) {
+                ways[mines]++;
+                if (mineWays[mines] == null) {
+                    mineWays[mines] = new double[assigned.length];
+                }
+                double[] row = mineWays[mines];
+                for (int c = 0; c < assigned.length; c++) {
+                    if (assigned[c]) {
+                        row[c]++;
+                    }
+                }
+                return true;
+            }
+            int c = order[pos];
+            for (int v = 0; v <= 1; v++) {
+                boolean ok = true;
+                for (int con : cellCons[c]) {
+                    open[con]--;
+                    left[con] -= v;
+                    if (left[con] < 0 || left[con] > open[con]) {
+                        ok = false;
+                    }
+                }
+                assigned[c] = v == 1;
+                boolean finished = !ok || assign(pos + 1, mines + v);
+                for (int con : cellCons[c]) {
+                    open[con]++;
+                    left[con] += v;
+                }
+                assigned[c] = false;
+                if (!finished) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Replaces the partial enumeration of a component too big to enumerate with an estimate:
+         * each cell gets the highest share of bombs among its constraints, and the component is
+         * treated as always holding the total of those.
+         */
+        private void estimate() {
+            exact = false;
+            int n = cells.length;
+            double[] p = new double[n];
+            double total = 0;
+            for (int c = 0; c < n; c++) {
+                for (int con : cellCons[c]) {
+                    p[c] = Math.max(p[c], (double) need[con] / vars[con].length);
+                }
+                total += p[c];
+            }
+            int k = Math.min(n, (int) Math.round(total));
+            Arrays.fill(ways, 0);
+            Arrays.fill(mineWays, null);
+            ways[k] = 1;
+            mineWays[k] = p;
+        }
+    }
+
+    /**
+     * Key identifies a component by its cells and constraints, so a component that comes out the
+     * same after a move can reuse its old result.
+     */
+    private static class Key {
+        final int[] data;
+        final int hash;
+
+        Key(Component c) {
+            data = new int[1 + c.cells.length + 2 * c.cons.length];
+            data[0] = c.cells.length;
+            System.arraycopy(c.cells, 0, data, 1, c.cells.length);
+            int at = 1 + c.cells.length;
+            for (int con = 0; con < c.cons.length; con++) {
+                data[at++] = c.cons[con];
+                data[at++] = c.need[con];
+            }
+            hash = Arrays.hashCode(data);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(data, ((Key) o).data);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * EnumerateTask enumerates a range of components, splitting the range in half across the
+     * fork-join pool until it's down to one component.
+     */
+    private static class EnumerateTask extends RecursiveAction {
+        private final List<Component> components;
+        private final int lo;
+        private final int hi;
+
+        EnumerateTask(List<Component> components, int lo, int hi) {
+            this.components = components;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo == 1) {
+                components.get(lo).enumerate();
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new EnumerateTask(components, lo, mid),
+                    new EnumerateTask(components, mid, hi));
+        }
+    }
+
+    /**
+     * Creates a probability engine for a game and the solver following it.
+     *
+     * @param ms game to work out probabilities for
+     * @param solver solver kept up to date with the game's moves
+     */
+    public ProbabilityEngine(Minesweeper ms, Solver solver) {
+        this.ms = ms;
+        this.solver = solver;
+    }
+
+    /**
+     * Works out the probabilities for the board as it is now. Call this after the solver has been
+     * updated with the latest move; it runs the solver's deductions first.
+     */
+    public void compute() {
+        solver.deduce();
+        if (width != ms.getWidth() || height != ms.getHeight()) {
+            width = ms.getWidth();
+            height = ms.getHeight();
+            local = new int[width * height];
+            Arrays.fill(local, -1);
+            frontierSize = 0;
+            cache.clear();
+        }
+        for (int f = 0; f < frontierSize; f++) {
+            local[frontier[f]] = -1;
+        }
+        frontierSize = 0;
+
+        // collect the constraints and the unknown tiles next to them, joining tiles that share a
+        // constraint into components
+        List<int[]> cons = new ArrayList<>();
+        int[] parent = new int[64];
+        long[] bits = solver.getFrontier();
+        for (int w = 0; w < bits.length; w++) {
+            long word = bits[w];
+            while (word != 0) {
+                int i = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                int[] con = constraint(i);
+                if (con == null) {
+                    continue;
+                }
+                int first = -1;
+                for (int k = 2; k < con.length; k++) {
+                    int t = con[k];
+                    if (local[t] < 0) {
+                        if (frontierSize == frontier.length) {
+                            frontier = Arrays.copyOf(frontier, Math.max(64, frontierSize * 2));
+                        }
+                        if (frontierSize == parent.length) {
+                            parent = Arrays.copyOf(parent, frontierSize * 2);
+                        }
+                        local[t] = frontierSize;
+                        parent[frontierSize] = frontierSize;
+                        frontier[frontierSize++] = t;
+                    }
+                    if (first < 0) {
+                        first = local[t];
+                    } else {
+                        union(parent, first, local[t]);
+                    }
+                }
+                cons.add(con);
+            }
+        }
+
+        List<Component> components = buildComponents(cons, parent);
+        Map<Key, Component> next = new HashMap<>();
+        List<Component> todo = new ArrayList<>();
+        for (int c = 0; c < components.size(); c++) {
+            Component comp = components.get(c);
+            Key key = new Key(comp);
+            Component old = cache.get(key);
+            if (old != null) {
+                components.set(c, old);
+            } else {
+                todo.add(comp);
+            }
+            next.put(key, components.get(c));
+        }
+        cache = next;
+        enumerated = todo.size();
+        if (todo.size() == 1) {
+            todo.get(0).enumerate();
+        } else if (!todo.isEmpty()) {
+            ForkJoinPool.commonPool().invoke(new EnumerateTask(todo, 0, todo.size()));
+        }
+        combine(components);
+    }
+
+    /**
+     * Gets the chance that tile (x, y) is a bomb, as of the last compute.
+     *
+     * @param x x coordinate of tile
+     * @param y y coordinate of tile
+     * @return 0 for revealed tiles and tiles known to be safe, 1 for tiles known to be bombs,
+     *         otherwise the probability the tile is a bomb
+     */
+    public double getProbability(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            throw new IllegalArgumentException("Tile out of bounds");
+        }
+        if (solver.isMine(x, y)) {
+            return 1;
+        }
+        int i = y * width + x;
+        if (!solver.isUnknown(i)) {
+            return 0;
+        }
+        return local[i] >= 0 ? frontierProb[local[i]] : interiorProb;
+    }
+
+    /**
+     * Gets the chance that every tile is a bomb, as of the last compute.
+     *
+     * @return row-major array of probabilities (index y * width + x), as for getProbability
+     */
+    public double[] getProbabilities() {
+        double[] grid = new double[width * height];
+        for (int i = 0; i < grid.length; i++) {
+            grid[i] = getProbability(i % width, i / width);
+        }
+        return grid;
+    }
+
+    /**
+     * Gets the unknown tile least likely to be a bomb, as of the last compute. Frontier tiles win
+     * ties, since revealing one tells more about the tiles around it.
+     *
+     * @return index (y * width + x) of the tile, or -1 if no tile is unknown
+     */
+    public int getBestGuess() {
+        int best = -1;
+        double bestProb = 2;
+        for (int f = 0; f < frontierSize; f++) {
+            if (frontierProb[f] < bestProb) {
+                bestProb = frontierProb[f];
+                best = frontier[f];
+            }
+        }
+        if (interiorProb < bestProb || best < 0) {
+            for (int i = 0; i < width * height; i++) {
+                if (local[i] < 0 && solver.isUnknown(i)) {
+                    return i;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the chance that an unknown tile away from the frontier is a bomb
+     */
+    public double getInteriorProbability() {
+        return interiorProb;
+    }
+
+    /**
+     * @return false if the last compute had to estimate some of the probabilities
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * @return number of components the last compute had to enumerate (the rest were reused)
+     */
+    public int getEnumeratedComponents() {
+        return enumerated;
+    }
+
+    /**
+     * Reads the constraint at revealed tile i.
+     *
+     * @param i index of a frontier tile
+     * @return {i, bombs needed, unknown neighbors...}, or null if it has no unknown neighbors
+     */
+    private int[] constraint(int i) {
+        int cx = i % width;
+        int cy = i / width;
+        int[] con = new int[10];
+        int size = 2;
+        for (int k = 0; k < 8; k++) {
+            int nx = cx + DX[k];
+            int ny = cy + DY[k];
+            if (nx >= 0 && nx < width && ny >= 0 && ny < height &&
+                    solver.isUnknown(ny * width + nx)) {
+                con[size++] = ny * width + nx;
+            }
+        }
+        if (size == 2) {
+            return null;
+        }
+        con[0] = i;
+        con[1] = solver.getNeed(i);
+        return Arrays.copyOf(con, size);
+    }
+
+    /**
+     * Groups the frontier tiles and constraints into components.
+     *
+     * @param cons constraints, as returned by constraint
+     * @param parent union-find forest over frontier positions
+     * @return the components, not yet enumerated
+     */
+    private List<Component> buildComponents(List<int[]> cons, int[] parent) {
+        // number the components by root, then count their cells and constraints
+        int[] id = new int[frontierSize];
+        Arrays.fill(id, -1);
+        int count = 0;
+        int[] cellCount = new int[frontierSize];
+        int[] conCount = new int[frontierSize];
+        for (int f = 0; f < frontierSize; f++) {
+            int r = find(parent, f);
+            if (id[r] < 0) {
+                id[r] = count++;
+            }
+            cellCount[id[r]]++;
+        }
+        for (int[] con : cons) {
+            conCount[id[find(parent, local[con[2]])]]++;
+        }
+
+        List<Component> components = new ArrayList<>(count);
+        for (int c = 0; c < count; c++) {
+            Component comp = new Component();
+            comp.cells = new int[cellCount[c]];
+            comp.cons = new int[conCount[c]];
+            comp.need = new int[conCount[c]];
+            comp.vars = new int[conCount[c]][];
+            components.add(comp);
+        }
+        Arrays.fill(cellCount, 0);
+        Arrays.fill(conCount, 0);
+        int[] pos = new int[frontierSize]; // position of each frontier tile in its component
+        for (int i = 0; i < width * height; i++) { // in ascending order, so keys match
+            int f = local[i];
+            if (f >= 0) {
+                int c = id[find(parent, f)];
+                pos[f] = cellCount[c];
+                components.get(c).cells[cellCount[c]++] = i;
+            }
+        }
+        for (int[] con : cons) { // already in ascending order of constraint tile
+            int c = id[find(parent, local[con[2]])];
+            Component comp = components.get(c);
+            int at = conCount[c]++;
+            comp.cons[at] = con[0];
+            comp.need[at] = con[1];
+            comp.vars[at] = new int[con.length - 2];
+            for (int k = 2; k < con.length; k++) {
+                comp.vars[at][k - 2] = pos[local[con[k]]];
+            }
+        }
+        return components;
+    }
+
+    /**
+     * Combines the components' enumerations with the number of bombs left and the number of
+     * unknown tiles away from the frontier, filling in frontierProb and interiorProb.
+     *
+     * @param components every component, enumerated
+     */
+    private void combine(List<Component> components) {
+        if (frontierProb.length < frontierSize) {
+            frontierProb = new double[frontier.length];
+        }
+        int n = components.size();
+        int bombsLeft = ms.getNumMines() - solver.getKnownMines();
+        int unknown = ms.getSafeTilesLeft() + ms.getNumMines() - solver.getKnownMines() -
+                solver.getKnownSafe();
+        int interior = unknown - frontierSize;
+        exact = true;
+        for (Component comp : components) {
+            exact &= comp.exact;
+        }
+
+        // weight[t]: ways to place the other bombs away from the frontier when t are on it
+        double[] weight = new double[frontierSize + 1];
+        if (frontierSize <= EXACT_FRONTIER_LIMIT) {
+            binomialWeights(weight, interior, bombsLeft);
+        } else { // each extra bomb on the frontier scales the weight by about the same ratio
+            exact = false;
+            double ratio = (double) bombsLeft / Math.max(1, unknown - bombsLeft);
+            weight[0] = 1;
+            for (int t = 1; t <= frontierSize; t++) {
+                weight[t] = weight[t - 1] * ratio;
+            }
+            normalize(weight);
+        }
+
+        // pre[j]: bomb counts over components before j; rest[j][u]: weight of everything after
+        // component j given u bombs so far, so a component's own weights are pre x rest
+        double[][] pre = new double[n + 1][];
+        pre[0] = new double[]{1};
+        for (int j = 0; j < n; j++) {
+            pre[j + 1] = normalize(convolve(pre[j], components.get(j).ways));
+        }
+        double[] rest = weight;
+        for (int j = n - 1; j >= 0; j--) {
+            Component comp = components.get(j);
+            int size = comp.cells.length;
+            // h[k]: total weight of the assignments of the other components given k bombs here
+            double[] h = new double[size + 1];
+            for (int k = 0; k <= size; k++) {
+                for (int a = 0; a < pre[j].length && a + k < rest.length; a++) {
+                    h[k] += pre[j][a] * rest[a + k];
+                }
+            }
+            double total = 0;
+            for (int k = 0; k <= size; k++) {
+                total += comp.ways[k] * h[k];
+            }
+            for (int c = 0; c < size; c++) {
+                double mine = 0;
+                for (int k = 0; k <= size; k++) {
+                    if (comp.mineWays[k] != null) {
+                        mine += comp.mineWays[k][c] * h[k];
+                    }
+                }
+                frontierProb[local[comp.cells[c]]] = total > 0 ? mine / total : 0;
+            }
+            // fold this component into rest for the components before it
+            double[] r = new double[Math.max(0, rest.length - size)];
+            for (int u = 0; u < r.length; u++) {
+                for (int k = 0; k <= size; k++) {
+                    r[u] += comp.ways[k] * rest[u + k];
+                }
+            }
+            rest = normalize(r);
+        }
+
+        // bombs expected away from the frontier, over every combined assignment
+        double total = 0;
+        double expected = 0;
+        double[] all = pre[n];
+        for (int t = 0; t < all.length && t < weight.length; t++) {
+            double w = all[t] * weight[t];
+            total += w;
+            expected += w * (bombsLeft - t);
+        }
+        interiorProb = interior > 0 && total > 0 ? Math.min(1, expected / total / interior) : 0;
+    }
+
+    /**
+     * Fills weight[t] with C(interior, bombsLeft - t), scaled so the largest is 1. Ratios of
+     * consecutive binomials are multiplied up in log space so huge boards don't overflow.
+     */
+    private static void binomialWeights(double[] weight, int interior, int bombsLeft) {
+        int lo = Math.max(0, bombsLeft - (weight.length - 1));
+        int hi = Math.min(interior, bombsLeft);
+        if (lo > hi) {
+            return;
+        }
+        double[] log = new double[hi - lo + 1];
+        double max = 0;
+        for (int m = lo + 1; m <= hi; m++) {
+            log[m - lo] = log[m - lo - 1] + Math.log((double) (interior - m + 1) / m);
+            max = Math.max(max, log[m - lo]);
+        }
+        for (int m = lo; m <= hi; m++) {
+            weight[bombsLeft - m] = Math.exp(log[m - lo] - max);
+        }
+    }
+
+    /**
+     * @return the convolution of a and b (a[i] * b[j] summed into i + j)
+     */
+    private static double[] convolve(double[] a, double[] b) {
+        double[] out = new double[a.length + b.length - 1];
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == 0) {
+                continue;
+            }
+            for (int j = 0; j < b.length; j++) {
+                out[i + j] += a[i] * b[j];
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Scales an array so its largest entry is 1 (left alone if it's all 0).
+     *
+     * @return the same array
+     */
+    private static double[] normalize(double[] a) {
+        double max = 0;
+        for (double v : a) {
+            max = Math.max(max, v);
+        }
+        if (max > 0) {
+            for (int i = 0; i < a.length; i++) {
+                a[i] /= max;
+            }
+        }
+        return a;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        int ra = find(parent, a);
+        int rb = find(parent, b);
+        if (ra != rb) {
+            parent[ra] = rb;
+        }
+    }
+}
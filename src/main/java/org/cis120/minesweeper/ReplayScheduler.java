@@ -0,0 +1,174 @@
+package org.cis120.minesweeper;
+
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+
+/**
+ * ReplayScheduler plays back a game's moves on a single Swing timer, at MOVE_MS a move times the
+ * replay speed. Each tick works out how many moves are due from the time since the last tick and
+ * jumps straight to the last of them with Minesweeper.replaySeek, so however many moves a tick
+ * plays, the board only changes (and is only redrawn) once. A replay can be paused, sped up or
+ * slowed down while it plays, and skipped to the end.
+ *
+ * Only one replay runs at a time: starting a replay while one is in progress starts it over.
+ */
+class ReplayScheduler {
+
+    static final double MIN_SPEED = 0.25;
+    static final double MAX_SPEED = 100;
+    static final int MOVE_MS = 500; // time between moves at 1x speed
+    private static final int FRAME_MS = 16; // shortest time between ticks (about 60 a second)
+
+    private final Minesweeper ms;
+    private final Runnable onFrame; // run after each tick that changed the replay
+    private final Timer timer;
+
+    private double speed = 1;
+    private double position = 0; // moves played so far, including part of the next one
+    private long lastTick; // time of the last tick, in ns
+    private boolean active = false; // whether a replay is in progress (playing or paused)
+
+    /**
+     * Creates a scheduler for a game's replays.
+     *
+     * @param ms game to replay
+     * @param onFrame run on the event dispatch thread after the replay moves on, or finishes
+     */
+    ReplayScheduler(Minesweeper ms, Runnable onFrame) {
+        this.ms = ms;
+        this.onFrame = onFrame;
+        timer = new Timer(MOVE_MS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                long now = System.nanoTime();
+                double elapsed = (now - lastTick) / 1e6;
+                lastTick = now;
+                advance(elapsed * speed / MOVE_MS);
+            }
+        });
+        timer.setRepeats(true);
+        updateDelay();
+    }
+
+    /**
+     * Starts replaying the game from a completely-hidden board, starting over if a replay is
+     * already in progress.
+     */
+    void start() {
+        if (!active) {
+            ms.reset(true); // reset with preserveData so only board state is reset
+            ms.startReplay();
+            active = true;
+        } else {
+            ms.replaySeek(0);
+        }
+        position = 0;
+        play();
+    }
+
+    /**
+     * Carries on playing a paused replay.
+     */
+    void play() {
+        if (active && !timer.isRunning()) {
+            lastTick = System.nanoTime();
+            timer.start();
+        }
+    }
+
+    /**
+     * Pauses the replay, leaving the board as it is.
+     */
+    void pause() {
+        timer.stop();
+    }
+
+    /**
+     * Skips to the end of the replay and finishes it.
+     */
+    void skipToEnd() {
+        if (active) {
+            advance(ms.getMoveCount() - position);
+        }
+    }
+
+    /**
+     * Stops the replay without changing the board, for when the game is replaced (such as by a
+     * new game).
+     */
+    void cancel() {
+        timer.stop();
+        active = false;
+    }
+
+    /**
+     * @return true if a replay is in progress, whether playing or paused
+     */
+    boolean isActive() {
+        return active;
+    }
+
+    /**
+     * @return true if a replay is playing
+     */
+    boolean isPlaying() {
+        return timer.isRunning();
+    }
+
+    /**
+     * Sets the replay speed.
+     *
+     * @param speed moves per MOVE_MS, clamped between MIN_SPEED and MAX_SPEED
+     */
+    void setSpeed(double speed) {
+        this.speed = Math.max(MIN_SPEED, Math.min(MAX_SPEED, speed));
+        updateDelay();
+    }
+
+    /**
+     * @return replay speed, in moves per MOVE_MS
+     */
+    double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Ticks once a move at slow speeds, and once a frame when moves are due more often than that.
+     */
+    private void updateDelay() {
+        int delay = (int) Math.max(FRAME_MS, MOVE_MS / speed);
+        timer.setDelay(delay);
+        timer.setInitialDelay(delay);
+    }
+
+    /**
+     * Plays the replay forward, jumping straight to the last move that's due. Finishes the replay
+     * once every move has been played.
+     *
+     * @param moves number of moves to move forward by, may include part of a move
+     */
+    void advance(double moves) {
+        if (!active) {
+            return;
+        }
+        int count = ms.getMoveCount();
+        position = Math.min(position + moves, count);
+        int target = (int) position;
+        boolean changed = false;
+        if (target > ms.getReplayMove()) {
+            ms.replaySeek(target);
+            changed = true;
+        }
+        if (ms.getReplayMove() >= count) { // no more moves, stop the timer and end replay
+            cancel();
+            ms.finishReplay();
+            changed = true;
+        }
+        if (changed) {
+            onFrame.run();
+        }
+    }
+}
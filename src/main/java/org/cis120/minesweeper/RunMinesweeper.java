@@ -4,22 +4,60 @@ package org.cis120.minesweeper;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
-import java.util.stream.Collectors;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 public class RunMinesweeper implements Runnable {
+
+    private final long created = System.nanoTime();
+    private final String savePath; // where the game is saved
+    private final FutureTask<Minesweeper> game; // the saved game, loading in the background
+    private long loadNanos; // how long loading the save took
+    private GameBoard board; // made last in run, once the saved game has loaded
+
+    /**
+     * Starts loading the images and the saved game in the background, so they load while the
+     * window is being built.
+     */
+    public RunMinesweeper() {
+        this(Minesweeper.SAVE_PATH);
+    }
+
+    /**
+     * Starts loading the images and the game saved at the given path in the background.
+     *
+     * @param savePath path of the save files without an extension
+     */
+    RunMinesweeper(String savePath) {
+        this.savePath = savePath;
+        Assets.load();
+        GameMetrics.register(); // metrics can be turned on and read over JMX
+        game = new FutureTask<>(new Callable<Minesweeper>() {
+            @Override
+            public Minesweeper call() {
+                long start = System.nanoTime();
+                Minesweeper ms = new Minesweeper();
+                ms.setSavePath(savePath);
+                ms.setUseBoardPool(true); // new games shouldn't wait for boards to be generated
+                if (!ms.loadGame()) { // if load fails, reset the board again (just in case)
+                    ms.reset(false);
+                }
+                loadNanos = System.nanoTime() - start;
+                return ms;
+            }
+        });
+        Thread t = new Thread(game, "minesweeper-load");
+        t.setDaemon(true);
+        t.start();
+    }
+
     public void run() {
         // Top-level frame in which game components live
         final JFrame frame = new JFrame("Minesweeper");
         frame.setLocation(300, 300);
 
-        // Game board
-        final GameBoard board = new GameBoard();
-        frame.add(board, BorderLayout.CENTER);
-
         // Reset button
         final JPanel control_panel = new JPanel();
         frame.add(control_panel, BorderLayout.NORTH);
@@ -38,7 +76,6 @@ public class RunMinesweeper implements Runnable {
             } // reset game when clicked
         });
         control_panel.add(status);
-        board.setStatus(status);
 
         JButton replay = new JButton();
         replay.setBorderPainted(false);
@@ -47,40 +84,95 @@ public class RunMinesweeper implements Runnable {
             @Override
             public void actionPerformed(ActionEvent actionEvent) {
                 board.replay();
-            } // replay when
-                                                                                     // clicked
+            } // replay when clicked, or pause/carry on if replaying
         });
         control_panel.add(replay);
-        board.setReplay(replay);
+
+        // Replay speed, relative to a move every half second
+        final JComboBox<String> speed = new JComboBox<>(new String[]{"0.25x", "0.5x", "1x", "2x",
+            "5x", "10x", "25x", "100x"});
+        speed.setSelectedItem("1x");
+        speed.setToolTipText("Replay speed");
+        speed.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent actionEvent) {
+                String s = (String) speed.getSelectedItem();
+                board.setReplaySpeed(Double.parseDouble(s.substring(0, s.length() - 1)));
+            }
+        });
+        control_panel.add(speed);
+
+        JButton skip = new JButton("Skip");
+        skip.setToolTipText("Skip to the end of the replay");
+        skip.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent actionEvent) {
+                board.skipReplay();
+            }
+        });
+        control_panel.add(skip);
 
         JButton help = new JButton();
         help.setBorderPainted(false);
         help.setContentAreaFilled(false);
-        try {
-            BufferedReader instructionsReader = new BufferedReader(new FileReader(
-                    new File("files/instructions.txt")));
-            final String instructions = instructionsReader.lines().collect(
-                    Collectors.joining(System.lineSeparator()));
-            help.addActionListener(new ActionListener() {
-                @Override
-                public void actionPerformed(ActionEvent actionEvent) {
-                    JOptionPane.showMessageDialog(frame, instructions); // show instructions written
-                                                                        // in instructions.txt
+        help.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent actionEvent) {
+                String instructions = Assets.getInstructions(); // only read the first time
+                if (instructions != null) {
+                    JOptionPane.showMessageDialog(frame, instructions); // show instructions
+                                                                        // written in
+                                                                        // instructions.txt
                 }
-            });
-            control_panel.add(help);
-            board.setHelp(help);
-            JOptionPane.showMessageDialog(frame, instructions);
-        } catch (IOException e) {
-            System.out.println("IOException: Missing instructions file");
-        }
+            }
+        });
+        control_panel.add(help);
+
+        // Game board, made last so the saved game loads while everything else is built
+        board = new GameBoard(loadedGame());
+        frame.add(new JScrollPane(board), BorderLayout.CENTER); // scrolls boards too big to fit
+        board.setStatus(status);
+        board.setReplay(replay);
+        board.setHelp(help);
 
         // Put the frame on the screen
         frame.pack();
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        board.setOnFirstPaint(new Runnable() {
+            @Override
+            public void run() {
+                reportStartup();
+            }
+        });
         frame.setVisible(true);
+    }
+
+    /**
+     * Waits for the saved game to finish loading.
+     *
+     * @return the loaded game, or a new one if there was no save
+     */
+    Minesweeper loadedGame() {
+        try {
+            return game.get();
+        } catch (InterruptedException | ExecutionException e) {
+            System.out.println("Load game failed: " + e);
+            Minesweeper ms = new Minesweeper();
+            ms.setSavePath(savePath);
+            ms.setUseBoardPool(true);
+            return ms;
+        }
+    }
 
-        // Start the game
-        board.loadGame();
+    /**
+     * Prints how long it took from starting the program to the first frame being painted.
+     */
+    private void reportStartup() {
+        long now = System.nanoTime();
+        long sinceJvm = System.currentTimeMillis() -
+                ManagementFactory.getRuntimeMXBean().getStartTime();
+        System.out.printf("Startup: first frame %d ms after launch (%.1f ms after main, " +
+                "assets %.1f ms, save %.1f ms)%n", sinceJvm, (now - created) / 1e6,
+                Assets.get().getLoadNanos() / 1e6, loadNanos / 1e6);
     }
 }
\ No newline at end of file
@@ -0,0 +1,346 @@
+package org.cis120.minesweeper;
+
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * SaveJournal stores a game as two files: a snapshot of the whole board (basePath.snap), written
+ * every so often, and an append-only journal of every move in the game (basePath.log), which gets
+ * a few bytes added to it per move. Loading reads the latest snapshot and replays only the moves
+ * made after it, so saving a move never rewrites the board.
+ *
+ * Snapshots are binary. After a header holding the format version, board size, number of bombs,
+ * seed, game state and number of moves covered, they store the bomb locations as a bitmap (1 bit
+ * per tile) followed by the tile states (2 bits per tile: hidden, flagged or revealed), both
+ * row-major.
+ *
+ * After its header (format version and seed), the journal stores each move as a varint of its
+ * difference from the move before, see MoveLog, so most moves take a byte or two.
+ *
+ * Snapshots and journals are each read into memory with a single read and decoded in one pass.
+ * (Snapshots aren't memory mapped: on Windows a live mapping stops the next snapshot being moved
+ * over the file.)
+ *
+ * Writes normally happen on the SaveWorker thread, so every method is synchronized.
+ */
+class SaveJournal {
+
+    private static final int SNAPSHOT_MAGIC = 0x4D535753; // "MSWS"
+    private static final int JOURNAL_MAGIC = 0x4D53574A; // "MSWJ"
+    private static final int VERSION = 2; // snapshot format version
+    private static final int JOURNAL_VERSION = 2;
+    private static final int SNAPSHOT_HEADER_LEN = 36; // magic, version, width, height, numMines,
+                                                       // seed, state, moveCount
+    static final int JOURNAL_HEADER_LEN = 16; // magic, version, seed
+
+    private final Path snapshotPath;
+    private final Path journalPath;
+    private DataOutputStream journal; // open journal, null until the first append
+    private int lastMove = 0; // last move in the journal, the next move is written relative to it
+    private long readLength = 0; // size of the journal last read
+    private long flushInterval = 0; // longest time in ms appended moves may wait to be flushed
+    private long lastFlush = 0; // time of the last flush in ms
+
+    /**
+     * Snapshot holds the contents of a snapshot file.
+     */
+    static class Snapshot {
+        int width;
+        int height;
+        int numMines;
+        long seed;
+        int state;
+        int moveCount; // number of moves from the journal already applied to cells
+        byte[] cells;
+    }
+
+    /**
+     * Creates a save journal that keeps its files next to basePath.
+     *
+     * @param basePath path of the save files without an extension
+     */
+    SaveJournal(String basePath) {
+        snapshotPath = Paths.get(basePath + ".snap");
+        journalPath = Paths.get(basePath + ".log");
+    }
+
+    /**
+     * Starts a new, empty journal for the game with the given seed, discarding the moves of any
+     * previous game.
+     *
+     * @param seed seed of the game, used to check the journal belongs to the snapshot
+     * @throws IOException if the journal can't be written
+     */
+    synchronized void startJournal(long seed) throws IOException {
+        close();
+        lastFlush = System.currentTimeMillis();
+        journal = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(journalPath)));
+        journal.writeInt(JOURNAL_MAGIC);
+        journal.writeInt(JOURNAL_VERSION);
+        journal.writeLong(seed);
+        journal.flush();
+        lastMove = 0;
+    }
+
+    /**
+     * Appends a move to the end of the journal.
+     *
+     * @param move the move, packed as by MoveLog.pack
+     * @return number of bytes written
+     * @throws IOException if the journal can't be written
+     */
+    synchronized int appendMove(int move) throws IOException {
+        if (journal == null) { // continue the journal left by a loaded game
+            journal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+                    journalPath.toFile(), true)));
+        }
+        int len = MoveLog.writeDelta(journal, lastMove, move);
+        lastMove = move;
+        return len;
+    }
+
+    /**
+     * Pushes any appended moves out to the journal file.
+     *
+     * @throws IOException if the journal can't be written
+     */
+    synchronized void flush() throws IOException {
+        lastFlush = System.currentTimeMillis();
+        if (journal != null) {
+            journal.flush();
+        }
+    }
+
+    /**
+     * Sets how long appended moves may wait before being flushed to the journal file.
+     *
+     * @param millis longest wait in ms, 0 to flush after every move
+     */
+    synchronized void setFlushInterval(long millis) {
+        flushInterval = millis;
+    }
+
+    /**
+     * Checks whether appended moves have waited long enough that they should be flushed.
+     *
+     * @param now current time in ms
+     * @return true if the journal should be flushed now
+     */
+    synchronized boolean flushDue(long now) {
+        return flushInterval == 0 || now - lastFlush >= flushInterval;
+    }
+
+    /**
+     * Writes a snapshot of the board. The snapshot is written to a temporary file first and then
+     * moved over the old one, so a crash part way through leaves the previous snapshot intact.
+     *
+     * @param s contents of the snapshot
+     * @throws IOException if the snapshot can't be written
+     */
+    synchronized void writeSnapshot(Snapshot s) throws IOException {
+        int n = s.cells.length;
+        int mineLen = (n + 7) >>> 3;
+        byte[] data = new byte[snapshotLength(n)];
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        buf.putInt(SNAPSHOT_MAGIC);
+        buf.putInt(VERSION);
+        buf.putInt(s.width);
+        buf.putInt(s.height);
+        buf.putInt(s.numMines);
+        buf.putLong(s.seed);
+        buf.putInt(s.state);
+        buf.putInt(s.moveCount);
+        int mines = SNAPSHOT_HEADER_LEN;
+        int states = SNAPSHOT_HEADER_LEN + mineLen;
+        for (int i = 0; i < n; i++) {
+            int c = s.cells[i];
+            if ((c & Minesweeper.MINE) != 0) {
+                data[mines + (i >>> 3)] |= 1 << (i & 7);
+            }
+            int state = 0; // hidden
+            if ((c & Minesweeper.REVEALED) != 0) {
+                state = 2;
+            } else if ((c & Minesweeper.FLAGGED) != 0) {
+                state = 1;
+            }
+            data[states + (i >>> 2)] |= state << ((i & 3) << 1);
+        }
+
+        Path tmp = Paths.get(snapshotPath + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            buf.rewind();
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+        }
+        Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Gets the size of a snapshot file.
+     *
+     * @param tiles number of tiles on the board
+     * @return size of the snapshot in bytes
+     */
+    static int snapshotLength(int tiles) {
+        return SNAPSHOT_HEADER_LEN + ((tiles + 7) >>> 3) + ((tiles + 3) >>> 2);
+    }
+
+    /**
+     * Reads the latest snapshot. The returned cells have their bomb and revealed/flagged bits set,
+     * but not their bomb counts.
+     *
+     * @return the snapshot, or null if there is no snapshot or it isn't in a format we know
+     * @throws IOException if the snapshot exists but can't be read
+     */
+    synchronized Snapshot readSnapshot() throws IOException {
+        if (!Files.exists(snapshotPath)) {
+            return null;
+        }
+        try (FileChannel ch = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < SNAPSHOT_HEADER_LEN || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            ByteBuffer buf = ByteBuffer.allocate((int) size);
+            while (buf.hasRemaining() && ch.read(buf) >= 0) {
+                // read the whole snapshot
+            }
+            buf.flip();
+            int magic = buf.getInt();
+            int version = buf.getInt();
+            if (magic != SNAPSHOT_MAGIC || version != VERSION) {
+                return null;
+            }
+            Snapshot s = new Snapshot();
+            s.width = buf.getInt();
+            s.height = buf.getInt();
+            s.numMines = buf.getInt();
+            s.seed = buf.getLong();
+            s.state = buf.getInt();
+            s.moveCount = buf.getInt();
+            long n = (long) s.width * s.height;
+            if (s.width <= 0 || s.height <= 0 || n > Minesweeper.MAX_TILES || s.numMines < 0 ||
+                s.numMines > n || s.moveCount < 0 || !isValidState(s.state)) {
+                return null;
+            }
+            s.cells = new byte[(int) n];
+            int mineLen = (int) ((n + 7) >>> 3);
+            if (size < SNAPSHOT_HEADER_LEN + mineLen + ((n + 3) >>> 2)) {
+                return null;
+            }
+            int mines = SNAPSHOT_HEADER_LEN;
+            int states = SNAPSHOT_HEADER_LEN + mineLen;
+            for (int i = 0; i < s.cells.length; i++) {
+                int c = 0;
+                if ((buf.get(mines + (i >>> 3)) & (1 << (i & 7))) != 0) {
+                    c = Minesweeper.MINE;
+                }
+                int state = (buf.get(states + (i >>> 2)) >>> ((i & 3) << 1)) & 3;
+                if (state == 2) {
+                    c |= Minesweeper.REVEALED;
+                } else if (state == 1) {
+                    c |= Minesweeper.FLAGGED;
+                }
+                s.cells[i] = (byte) c;
+            }
+            return s;
+        }
+    }
+
+    /**
+     * Checks that a game state read from a save is one the model uses.
+     *
+     * @param state the state
+     * @return true for 0 (ongoing), 1 (won), -1 (lost), or 2, -2 or 3 (replaying)
+     */
+    static boolean isValidState(int state) {
+        return state >= -2 && state <= 3;
+    }
+
+    /**
+     * Reads every move in the journal. If the last move was only partly written (the game was
+     * interrupted while saving), it is dropped and the journal is truncated to the last complete
+     * move so that later appends line up.
+     *
+     * @param seed seed of the snapshot's game
+     * @param tiles number of tiles on the snapshot's board
+     * @return the moves, or null if the journal is missing, belongs to a different game or has
+     *         a move off the board
+     * @throws IOException if the journal can't be read
+     */
+    synchronized MoveLog readMoves(long seed, int tiles) throws IOException {
+        if (!Files.exists(journalPath)) {
+            return null;
+        }
+        close();
+        try (FileChannel ch = FileChannel.open(journalPath, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long length = ch.size();
+            if (length < JOURNAL_HEADER_LEN || length > Integer.MAX_VALUE) {
+                return null;
+            }
+            ByteBuffer buf = ByteBuffer.allocate((int) length);
+            while (buf.hasRemaining() && ch.read(buf) >= 0) {
+                // read the whole journal
+            }
+            buf.flip();
+            int magic = buf.getInt();
+            int version = buf.getInt();
+            if (magic != JOURNAL_MAGIC || version != JOURNAL_VERSION || buf.getLong() != seed) {
+                return null;
+            }
+            MoveLog moves = new MoveLog(buf.remaining());
+            int last = 0;
+            while (buf.hasRemaining()) {
+                int move = MoveLog.readDelta(buf, last);
+                if (move < 0) { // only partly written
+                    break;
+                }
+                int index = MoveLog.index(move);
+                if (index < 0 || index >= tiles) { // corrupt, or from another board
+                    return null;
+                }
+                moves.addPacked(move);
+                last = move;
+            }
+            long validLength = buf.position();
+            if (validLength != length) { // drop the partly written move
+                ch.truncate(validLength);
+            }
+            lastMove = last;
+            readLength = validLength;
+            return moves;
+        }
+    }
+
+    /**
+     * @return size in bytes of the journal last read
+     */
+    synchronized long getReadLength() {
+        return readLength;
+    }
+
+    /**
+     * Closes the journal file if it is open.
+     *
+     * @throws IOException if the journal can't be flushed
+     */
+    synchronized void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+}
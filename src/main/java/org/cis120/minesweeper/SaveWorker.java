@@ -0,0 +1,344 @@
+package org.cis120.minesweeper;
+
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+
+/**
+ * SaveWorker does the disk writes for every game's SaveJournal on a single background thread, so
+ * making a move never waits on the disk. Games hand it writes through a bounded queue, kept in
+ * parallel primitive arrays so that queuing a move allocates nothing. Nothing but sync waits for
+ * room: when the queue is full (the disk has stalled), the other methods return false and the
+ * game tries again with its next save, since its moves are all still in its MoveLog. Moves that
+ * arrive together are written in one go and flushed once, and a journal with a flush interval is
+ * only flushed when the interval is up. Anything still queued is flushed when the program exits.
+ */
+class SaveWorker implements Runnable {
+
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final long POLL_MS = 5; // how often to check for due flushes while idle
+
+    // kinds of task
+    private static final int START = 0;
+    private static final int APPEND = 1;
+    private static final int SNAPSHOT = 2;
+    private static final int FLUSH = 3;
+    private static final int SYNC = 4;
+
+    private static SaveWorker instance = null;
+
+    // queued tasks, a ring of slots starting at head, with each task's fields in parallel arrays
+    private final int capacity;
+    private final int[] kinds;
+    private final SaveJournal[] journals;
+    private final long[] values; // seed for START, packed move for APPEND
+    private final Object[] extras; // snapshot for SNAPSHOT, latch to release for SYNC
+    private int head = 0;
+    private int count = 0;
+
+    // tasks taken off the queue, only used on the worker thread
+    private final int[] batchKinds;
+    private final SaveJournal[] batchJournals;
+    private final long[] batchValues;
+    private final Object[] batchExtras;
+
+    private final Set<SaveJournal> dirty = new LinkedHashSet<>(); // journals with unflushed moves
+
+    /**
+     * Creates a save worker. Its thread isn't started, see get.
+     *
+     * @param capacity most tasks that can be queued at once
+     */
+    SaveWorker(int capacity) {
+        this.capacity = capacity;
+        kinds = new int[capacity];
+        journals = new SaveJournal[capacity];
+        values = new long[capacity];
+        extras = new Object[capacity];
+        batchKinds = new int[capacity];
+        batchJournals = new SaveJournal[capacity];
+        batchValues = new long[capacity];
+        batchExtras = new Object[capacity];
+    }
+
+    /**
+     * Gets the shared save worker, starting its thread the first time it's needed.
+     *
+     * @return the save worker
+     */
+    static synchronized SaveWorker get() {
+        if (instance == null) {
+            instance = new SaveWorker(QUEUE_CAPACITY);
+            Thread t = new Thread(instance, "minesweeper-save");
+            t.setDaemon(true);
+            t.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    instance.syncAll();
+                }
+            }));
+        }
+        return instance;
+    }
+
+    /**
+     * Queues starting a new journal, see SaveJournal.startJournal.
+     *
+     * @param journal journal to write to
+     * @param seed seed of the game
+     * @return false if the queue is full and nothing was queued
+     */
+    boolean startJournal(SaveJournal journal, long seed) {
+        return offer(START, journal, seed, null);
+    }
+
+    /**
+     * Queues appending a move, see SaveJournal.appendMove.
+     *
+     * @param journal journal to write to
+     * @param move the move, packed as by MoveLog.pack
+     * @return false if the queue is full and nothing was queued
+     */
+    boolean appendMove(SaveJournal journal, int move) {
+        return offer(APPEND, journal, move, null);
+    }
+
+    /**
+     * Queues writing a snapshot, see SaveJournal.writeSnapshot. The journal is flushed first so
+     * the moves the snapshot covers are always on disk before it is.
+     *
+     * @param journal journal to write to
+     * @param snapshot contents of the snapshot, which must not change afterwards
+     * @return false if the queue is full and nothing was queued
+     */
+    boolean writeSnapshot(SaveJournal journal, SaveJournal.Snapshot snapshot) {
+        return offer(SNAPSHOT, journal, 0, snapshot);
+    }
+
+    /**
+     * Queues flushing a journal right away, whatever its flush interval.
+     *
+     * @param journal journal to flush
+     * @return false if the queue is full and nothing was queued
+     */
+    boolean flush(SaveJournal journal) {
+        return offer(FLUSH, journal, 0, null);
+    }
+
+    /**
+     * Waits until every write queued so far has been done and the journal has been flushed,
+     * waiting for room in the queue if it's full.
+     *
+     * @param journal journal to flush
+     */
+    void sync(SaveJournal journal) {
+        CountDownLatch done = new CountDownLatch(1);
+        put(SYNC, journal, done);
+        awaitUninterruptibly(done);
+    }
+
+    /**
+     * Waits until every write queued so far has been done and every journal has been flushed.
+     */
+    void syncAll() {
+        sync(null);
+    }
+
+    /**
+     * Writes out queued tasks until the program exits.
+     */
+    @Override
+    public void run() {
+        while (true) {
+            int n;
+            try {
+                n = takeBatch();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (n > 0) {
+                GameEvents.SaveWrite event = null;
+                if (GameEvents.AVAILABLE) {
+                    event = new GameEvents.SaveWrite();
+                    event.begin();
+                }
+                long bytes = 0;
+                for (int k = 0; k < n; k++) {
+                    bytes += process(k);
+                    batchJournals[k] = null; // don't keep finished games alive
+                    batchExtras[k] = null;
+                }
+                if (GameEvents.AVAILABLE && event.shouldCommit()) {
+                    event.tasks = n;
+                    event.bytes = bytes;
+                    event.commit();
+                }
+            }
+            flushDue();
+        }
+    }
+
+    /**
+     * Waits for tasks (or, while journals have unflushed moves, until it's time to check their
+     * flush intervals), then takes every queued task into the batch arrays.
+     *
+     * @return number of tasks taken, possibly 0
+     * @throws InterruptedException if the worker thread is interrupted
+     */
+    private synchronized int takeBatch() throws InterruptedException {
+        while (count == 0 && dirty.isEmpty()) {
+            wait();
+        }
+        if (count == 0) {
+            wait(POLL_MS);
+        }
+        int n = count;
+        for (int k = 0; k < n; k++) {
+            int slot = (head + k) % capacity;
+            batchKinds[k] = kinds[slot];
+            batchJournals[k] = journals[slot];
+            batchValues[k] = values[slot];
+            batchExtras[k] = extras[slot];
+            journals[slot] = null;
+            extras[slot] = null;
+        }
+        head = (head + n) % capacity;
+        count = 0;
+        notifyAll(); // there's room for anyone waiting in sync
+        return n;
+    }
+
+    /**
+     * Does one task from the batch.
+     *
+     * @param k position of the task in the batch
+     * @return number of bytes written
+     */
+    private int process(int k) {
+        SaveJournal journal = batchJournals[k];
+        int bytes = 0;
+        try {
+            switch (batchKinds[k]) {
+                case START:
+                    journal.startJournal(batchValues[k]);
+                    dirty.remove(journal);
+                    bytes = SaveJournal.JOURNAL_HEADER_LEN;
+                    break;
+                case APPEND:
+                    bytes = journal.appendMove((int) batchValues[k]);
+                    dirty.add(journal);
+                    break;
+                case SNAPSHOT:
+                    SaveJournal.Snapshot snapshot = (SaveJournal.Snapshot) batchExtras[k];
+                    journal.flush();
+                    dirty.remove(journal);
+                    journal.writeSnapshot(snapshot);
+                    bytes = SaveJournal.snapshotLength(snapshot.cells.length);
+                    break;
+                case FLUSH:
+                case SYNC:
+                    if (journal == null) { // sync every journal
+                        for (SaveJournal j : dirty) {
+                            j.flush();
+                        }
+                        dirty.clear();
+                    } else {
+                        journal.flush();
+                        dirty.remove(journal);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        } catch (IOException e) {
+            System.out.println("IOException: Save game failed");
+        } finally {
+            if (batchKinds[k] == SYNC) {
+                ((CountDownLatch) batchExtras[k]).countDown();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Flushes the journals whose flush interval is up.
+     */
+    private void flushDue() {
+        long now = System.currentTimeMillis();
+        Iterator<SaveJournal> it = dirty.iterator();
+        while (it.hasNext()) {
+            SaveJournal j = it.next();
+            if (j.flushDue(now)) {
+                try {
+                    j.flush();
+                } catch (IOException e) {
+                    System.out.println("IOException: Save game failed");
+                }
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Adds a task to the queue, unless it's full.
+     *
+     * @return false if the queue is full
+     */
+    private synchronized boolean offer(int kind, SaveJournal journal, long value, Object extra) {
+        if (count == capacity) {
+            return false;
+        }
+        int slot = (head + count) % capacity;
+        kinds[slot] = kind;
+        journals[slot] = journal;
+        values[slot] = value;
+        extras[slot] = extra;
+        count++;
+        if (count == 1) { // the worker only waits while the queue is empty
+            notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * Adds a task to the queue, waiting for room if it's full, even if the thread is interrupted.
+     */
+    private synchronized void put(int kind, SaveJournal journal, Object extra) {
+        boolean interrupted = false;
+        while (!offer(kind, journal, 0, extra)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for a latch to be released, even if the thread is interrupted.
+     *
+     * @param latch latch to wait for
+     */
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package org.cis120.minesweeper;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Simulator plays many games of Minesweeper without a window, spread across every core, and
+ * reports how fast they were played and how they went. Each worker thread owns its own games and
+ * its own random number stream split from a single seed, so a run is reproducible for a given
+ * seed and thread count, and games don't write save files. It doubles as a throughput benchmark
+ * for the model.
+ *
+ * Games are played by an auto-player that reveals tiles the Solver proves are safe, and only
+ * guesses when the solver is stuck, picking the tile the ProbabilityEngine finds least likely to
+ * be a bomb.
+ *
+ * Usage: java org.cis120.minesweeper.Simulator width height mines games [threads] [seed]
+ * (or mvn exec:java -Dexec.mainClass=org.cis120.minesweeper.Simulator -Dexec.args="...")
+ */
+public class Simulator {
+
+    private final int width;
+    private final int height;
+    private final int numMines;
+
+    /**
+     * Results holds the totals over a set of games.
+     */
+    public static class Results {
+        private long games;
+        private long wins;
+        private long moves;
+        private long reveals; // moves that revealed at least one tile
+        private long revealed; // tiles revealed over all those moves
+        private long guesses; // moves made without knowing the tile was safe
+        private long nanos; // wall-clock time taken to play the games
+
+        /**
+         * Adds another set of results to these ones.
+         *
+         * @param r results to add
+         */
+        private void add(Results r) {
+            games += r.games;
+            wins += r.wins;
+            moves += r.moves;
+            reveals += r.reveals;
+            revealed += r.revealed;
+            guesses += r.guesses;
+        }
+
+        /**
+         * @return number of games played
+         */
+        public long getGames() {
+            return games;
+        }
+
+        /**
+         * @return number of games won
+         */
+        public long getWins() {
+            return wins;
+        }
+
+        /**
+         * @return games played per second of wall-clock time
+         */
+        public double getGamesPerSecond() {
+            return nanos == 0 ? 0 : games * 1e9 / nanos;
+        }
+
+        /**
+         * @return fraction of games won
+         */
+        public double getWinRate() {
+            return games == 0 ? 0 : (double) wins / games;
+        }
+
+        /**
+         * @return average number of moves per game
+         */
+        public double getAverageMoves() {
+            return games == 0 ? 0 : (double) moves / games;
+        }
+
+        /**
+         * @return average number of tiles revealed by a move that revealed any
+         */
+        public double getAverageRevealSize() {
+            return reveals == 0 ? 0 : (double) revealed / reveals;
+        }
+
+        /**
+         * @return average number of guesses per game, including the first move
+         */
+        public double getAverageGuesses() {
+            return games == 0 ? 0 : (double) guesses / games;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d games in %.2f s (%.0f games/s), win rate %.2f%%, " +
+                    "%.1f moves per game (%.2f guesses), %.2f tiles per reveal", games,
+                    nanos / 1e9, getGamesPerSecond(), getWinRate() * 100, getAverageMoves(),
+                    getAverageGuesses(), getAverageRevealSize());
+        }
+    }
+
+    /**
+     * Creates a simulator for boards of the given size.
+     *
+     * @param width number of columns on the board
+     * @param height number of rows on the board
+     * @param numMines number of bombs placed on the board
+     */
+    public Simulator(int width, int height, int numMines) {
+        this.width = width;
+        this.height = height;
+        this.numMines = numMines;
+    }
+
+    /**
+     * Plays games split evenly over the given number of threads.
+     *
+     * @param games number of games to play
+     * @param threads number of worker threads
+     * @param seed seed every worker's random number stream is split from
+     * @return totals over all the games
+     */
+    public Results run(long games, int threads, long seed) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        SplittableRandom root = new SplittableRandom(seed);
+        long start = System.nanoTime();
+        try {
+            List<Future<Results>> futures = new ArrayList<>();
+            for (int w = 0; w < threads; w++) {
+                final long count = games / threads + (w < games % threads ? 1 : 0);
+                final SplittableRandom rng = root.split();
+                futures.add(pool.submit(new Callable<Results>() {
+                    @Override
+                    public Results call() {
+                        return playGames(count, rng);
+                    }
+                }));
+            }
+            Results total = new Results();
+            for (Future<Results> f : futures) {
+                total.add(f.get());
+            }
+            total.nanos = System.nanoTime() - start;
+            return total;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Simulation failed", e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Plays a number of games on one thread, reusing a single board.
+     *
+     * @param count number of games to play
+     * @param rng random number stream for this worker
+     * @return totals over the games
+     */
+    private Results playGames(long count, SplittableRandom rng) {
+        Minesweeper ms = new Minesweeper(width, height, numMines, rng.nextLong());
+        ms.setInstrumented(false); // keep simulated moves out of the player's metrics
+        Solver solver = new Solver(ms);
+        ProbabilityEngine engine = new ProbabilityEngine(ms, solver);
+        Results r = new Results();
+        for (long g = 0; g < count; g++) {
+            ms.resetWithSeed(rng.nextLong());
+            solver.reset();
+            playGame(ms, solver, engine, r);
+        }
+        return r;
+    }
+
+    /**
+     * Plays one game to the end, opening in the middle of the board and then revealing tiles the
+     * solver proves are safe, guessing the safest tile when there are none.
+     *
+     * @param ms game to play, freshly reset
+     * @param solver solver for the game, freshly reset
+     * @param engine probability engine following the solver
+     * @param r results to add the game to
+     */
+    private void playGame(Minesweeper ms, Solver solver, ProbabilityEngine engine, Results r) {
+        int x = width / 2;
+        int y = height / 2;
+        r.guesses++;
+        while (true) {
+            int before = ms.getSafeTilesLeft();
+            ms.playTurn(x, y, true);
+            r.moves++;
+            int revealed = before - ms.getSafeTilesLeft();
+            if (revealed > 0) {
+                r.reveals++;
+                r.revealed += revealed;
+            }
+            if (ms.getState() != 0) {
+                break;
+            }
+            solver.update(x, y);
+            solver.deduce();
+            int next = solver.nextSafe();
+            if (next < 0) {
+                r.guesses++;
+                engine.compute();
+                next = engine.getBestGuess();
+            }
+            x = next % width;
+            y = next / width;
+        }
+        r.games++;
+        if (ms.getState() == 1) {
+            r.wins++;
+        }
+    }
+
+    /**
+     * Runs a simulation from the command line and prints the results.
+     *
+     * @param args width, height, number of bombs, number of games, and optionally the number of
+     *             threads and the seed
+     */
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            System.out.println("Usage: Simulator width height mines games [threads] [seed]");
+            return;
+        }
+        int width = Integer.parseInt(args[0]);
+        int height = Integer.parseInt(args[1]);
+        int mines = Integer.parseInt(args[2]);
+        long games = Long.parseLong(args[3]);
+        int threads = args.length > 4 ? Integer.parseInt(args[4])
+                : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : System.nanoTime();
+
+        System.out.println("Simulating " + width + "x" + height + " with " + mines + " mines on " +
+                threads + " threads");
+        System.out.println(new Simulator(width, height, mines).run(games, threads, seed));
+    }
+}
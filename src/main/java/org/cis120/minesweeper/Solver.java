@@ -0,0 +1,466 @@
+package org.cis120.minesweeper;
+
+
+import java.util.Arrays;
+
+
+/**
+ * Solver finds tiles that are certainly safe or certainly bombs from what the player can see on a
+ * Minesweeper board (getCell), without looking at where the bombs are.
+ *
+ * Every revealed tile is a constraint: its number, minus the bombs already found around it, is how
+ * many bombs are among its unknown neighbors. A constraint whose remaining bombs are 0 makes all
+ * its unknown neighbors safe, and one whose remaining bombs equal its unknown neighbors makes them
+ * all bombs. Pairs of constraints within two tiles of each other are also compared: if A needs
+ * more bombs than B by exactly the number of A's unknowns that B doesn't share, those unknowns are
+ * bombs and B's unshared unknowns are safe (this covers subsets and patterns like 1-2-1).
+ *
+ * The sets of revealed, safe, bomb and frontier tiles are bitboards (one bit per tile in a long[],
+ * row-major). The solver is incremental: after each move, update only looks at tiles revealed by
+ * that move, and deduce only re-examines constraints next to something that changed, so the
+ * frontier carries over between moves.
+ */
+public class Solver {
+
+    // offsets to the 8 neighbors of a tile, bit k of a neighbor mask is neighbor k
+    private static final int[] DX = {-1, 0, 1, -1, 1, -1, 0, 1};
+    private static final int[] DY = {-1, -1, -1, 0, 0, 1, 1, 1};
+
+    private final Minesweeper ms;
+    private int width;
+    private int height;
+
+    private long[] revealed; // tiles the solver has seen revealed
+    private long[] safe; // hidden tiles known to be safe
+    private long[] mines; // hidden tiles known to be bombs
+    private long[] frontier; // revealed tiles that still have unknown neighbors
+    private long[] queued; // tiles in work, so none is queued twice
+
+    private int[] work = new int[64]; // constraints to re-examine
+    private int workSize = 0;
+    private int[] safeList = new int[64]; // safe tiles found, in the order they were found
+    private int safeHead = 0;
+    private int safeTail = 0;
+    private int[] bfs = new int[64]; // scratch queue for update
+
+    private long deductions = 0; // tiles found to be safe or bombs so far
+    private int knownMines = 0; // bits set in mines
+    private int knownSafe = 0; // bits set in safe
+
+    /**
+     * Creates a solver for the given game, reading whatever is already revealed on it.
+     *
+     * @param ms game to solve
+     */
+    public Solver(Minesweeper ms) {
+        this.ms = ms;
+        reset();
+    }
+
+    /**
+     * Forgets everything and reads the board again from scratch. Call this after the game is reset
+     * or loaded.
+     */
+    public void reset() {
+        int words = (ms.getWidth() * ms.getHeight() + 63) >>> 6;
+        if (revealed != null && revealed.length == words && width == ms.getWidth()) {
+            Arrays.fill(revealed, 0);
+            Arrays.fill(safe, 0);
+            Arrays.fill(mines, 0);
+            Arrays.fill(frontier, 0);
+            Arrays.fill(queued, 0);
+        } else {
+            revealed = new long[words];
+            safe = new long[words];
+            mines = new long[words];
+            frontier = new long[words];
+            queued = new long[words];
+        }
+        width = ms.getWidth();
+        height = ms.getHeight();
+        workSize = 0;
+        knownMines = 0;
+        knownSafe = 0;
+        safeHead = 0;
+        safeTail = 0;
+        for (int i = 0; i < width * height; i++) {
+            if (!has(revealed, i) && isRevealed(i)) {
+                update(i % width, i / width);
+            }
+        }
+    }
+
+    /**
+     * Takes in a move made at (x, y): finds the tiles it revealed (walking out from (x, y) through
+     * tiles revealed since the last update) and queues the constraints they affect.
+     *
+     * @param x x coordinate of the move
+     * @param y y coordinate of the move
+     */
+    public void update(int x, int y) {
+        int start = y * width + x;
+        if (has(revealed, start) || !isRevealed(start)) {
+            return;
+        }
+        set(revealed, start);
+        int head = 0;
+        int tail = 0;
+        bfs[tail++] = start;
+        while (head < tail) {
+            int i = bfs[head++];
+            if (has(safe, i)) {
+                clear(safe, i);
+                knownSafe--;
+            }
+            int cx = i % width;
+            int cy = i / width;
+            if (ms.getCell(cx, cy) >= 0) {
+                set(frontier, i);
+                enqueue(i);
+            }
+            for (int k = 0; k < 8; k++) {
+                int nx = cx + DX[k];
+                int ny = cy + DY[k];
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height) {
+                    continue;
+                }
+                int n = ny * width + nx;
+                if (has(revealed, n)) { // its unknowns just shrank
+                    enqueue(n);
+                } else if (isRevealed(n)) { // also revealed by this move
+                    set(revealed, n);
+                    if (tail == bfs.length) {
+                        bfs = Arrays.copyOf(bfs, bfs.length * 2);
+                    }
+                    bfs[tail++] = n;
+                }
+            }
+        }
+    }
+
+    /**
+     * Re-examines queued constraints until nothing more can be deduced.
+     *
+     * @return number of new safe tiles or bombs found
+     */
+    public int deduce() {
+        long before = deductions;
+        while (workSize > 0) {
+            int i = work[--workSize];
+            clear(queued, i);
+            if (has(frontier, i)) {
+                examine(i);
+            }
+        }
+        return (int) (deductions - before);
+    }
+
+    /**
+     * Gets a hidden tile known to be safe that hasn't been revealed yet.
+     *
+     * @return index (y * width + x) of a safe tile, or -1 if none is known
+     */
+    public int nextSafe() {
+        while (safeHead < safeTail) {
+            int i = safeList[safeHead];
+            if (has(safe, i) && !isRevealed(i)) {
+                return i;
+            }
+            safeHead++;
+        }
+        return -1;
+    }
+
+    /**
+     * @param x x coordinate of tile
+     * @param y y coordinate of tile
+     * @return true if tile (x, y) is hidden and known to be safe
+     */
+    public boolean isSafe(int x, int y) {
+        return has(safe, y * width + x);
+    }
+
+    /**
+     * @param x x coordinate of tile
+     * @param y y coordinate of tile
+     * @return true if tile (x, y) is known to be a bomb
+     */
+    public boolean isMine(int x, int y) {
+        return has(mines, y * width + x);
+    }
+
+    /**
+     * @param x x coordinate of tile
+     * @param y y coordinate of tile
+     * @return true if tile (x, y) is revealed and has neighbors that aren't known yet
+     */
+    public boolean isFrontier(int x, int y) {
+        return has(frontier, y * width + x);
+    }
+
+    /**
+     * @return number of tiles found to be safe or bombs since the solver was created
+     */
+    public long getDeductions() {
+        return deductions;
+    }
+
+    /**
+     * @return number of tiles known to be bombs
+     */
+    public int getKnownMines() {
+        return knownMines;
+    }
+
+    /**
+     * @return number of hidden tiles known to be safe
+     */
+    public int getKnownSafe() {
+        return knownSafe;
+    }
+
+    /**
+     * Gets the frontier bitboard (bit i set if revealed tile i still has unknown neighbors). The
+     * array belongs to the solver and must not be changed.
+     *
+     * @return the frontier bitboard
+     */
+    long[] getFrontier() {
+        return frontier;
+    }
+
+    /**
+     * Checks whether tile i is hidden and not known to be safe or a bomb.
+     *
+     * @param i index of tile
+     * @return true if tile i is unknown
+     */
+    boolean isUnknown(int i) {
+        return !has(revealed, i) && !has(safe, i) && !has(mines, i);
+    }
+
+    /**
+     * Gets how many bombs are among the unknown neighbors of revealed tile i.
+     *
+     * @param i index of a revealed tile
+     * @return its number minus its known bomb neighbors
+     */
+    int getNeed(int i) {
+        return need(i);
+    }
+
+    /**
+     * Applies the single-tile and pairwise rules to the constraint at tile i.
+     *
+     * @param i index of a frontier tile
+     */
+    private void examine(int i) {
+        int unknown = unknownMask(i);
+        if (unknown == 0) {
+            clear(frontier, i);
+            return;
+        }
+        int need = need(i);
+        int count = Integer.bitCount(unknown);
+        if (need == 0) {
+            markAll(i, unknown, false);
+            return;
+        }
+        if (need == count) {
+            markAll(i, unknown, true);
+            return;
+        }
+
+        // compare with the other frontier tiles within two tiles, whose unknowns all fit in the
+        // 7x7 window centered on i
+        int cx = i % width;
+        int cy = i / width;
+        long a = toWindow(unknown, 0, 0);
+        for (int oy = -2; oy <= 2; oy++) {
+            for (int ox = -2; ox <= 2; ox++) {
+                int nx = cx + ox;
+                int ny = cy + oy;
+                if ((ox == 0 && oy == 0) || nx < 0 || nx >= width || ny < 0 || ny >= height) {
+                    continue;
+                }
+                int j = ny * width + nx;
+                if (!has(frontier, j)) {
+                    continue;
+                }
+                long b = toWindow(unknownMask(j), ox, oy);
+                if ((a & b) == 0 || a == b) { // nothing to learn from comparing them
+                    continue;
+                }
+                long onlyA = a & ~b;
+                long onlyB = b & ~a;
+                int diff = need - need(j);
+                if (diff == Long.bitCount(onlyA)) {
+                    markWindow(cx, cy, onlyA, true);
+                    markWindow(cx, cy, onlyB, false);
+                } else if (-diff == Long.bitCount(onlyB)) {
+                    markWindow(cx, cy, onlyB, true);
+                    markWindow(cx, cy, onlyA, false);
+                } else {
+                    continue;
+                }
+                enqueue(i); // i's unknowns may have changed, look at it again from the start
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the neighbors of tile i that are hidden and not known to be safe or bombs.
+     *
+     * @param i index of tile
+     * @return mask of unknown neighbors (bit k for neighbor k)
+     */
+    private int unknownMask(int i) {
+        int cx = i % width;
+        int cy = i / width;
+        int mask = 0;
+        for (int k = 0; k < 8; k++) {
+            int nx = cx + DX[k];
+            int ny = cy + DY[k];
+            if (nx < 0 || nx >= width || ny < 0 || ny >= height) {
+                continue;
+            }
+            int n = ny * width + nx;
+            if (isUnknown(n)) {
+                mask |= 1 << k;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Gets how many bombs are among the unknown neighbors of revealed tile i.
+     *
+     * @param i index of a revealed tile
+     * @return its number minus its known bomb neighbors
+     */
+    private int need(int i) {
+        int cx = i % width;
+        int cy = i / width;
+        int need = ms.getCell(cx, cy);
+        for (int k = 0; k < 8; k++) {
+            int nx = cx + DX[k];
+            int ny = cy + DY[k];
+            if (nx >= 0 && nx < width && ny >= 0 && ny < height && has(mines, ny * width + nx)) {
+                need--;
+            }
+        }
+        return need;
+    }
+
+    /**
+     * Converts a neighbor mask of the tile at offset (ox, oy) into the 7x7 window centered on the
+     * tile being examined (bit (wy + 3) * 7 + (wx + 3) for window offset (wx, wy)).
+     */
+    private static long toWindow(int mask, int ox, int oy) {
+        long window = 0;
+        for (int k = 0; k < 8; k++) {
+            if ((mask & (1 << k)) != 0) {
+                window |= 1L << ((oy + DY[k] + 3) * 7 + ox + DX[k] + 3);
+            }
+        }
+        return window;
+    }
+
+    /**
+     * Marks every tile in a neighbor mask of tile i as safe or a bomb.
+     */
+    private void markAll(int i, int mask, boolean mine) {
+        int cx = i % width;
+        int cy = i / width;
+        for (int k = 0; k < 8; k++) {
+            if ((mask & (1 << k)) != 0) {
+                mark((cy + DY[k]) * width + cx + DX[k], mine);
+            }
+        }
+    }
+
+    /**
+     * Marks every tile in a 7x7 window mask centered on (cx, cy) as safe or a bomb.
+     */
+    private void markWindow(int cx, int cy, long window, boolean mine) {
+        while (window != 0) {
+            int b = Long.numberOfTrailingZeros(window);
+            window &= window - 1;
+            mark((cy + b / 7 - 3) * width + cx + b % 7 - 3, mine);
+        }
+    }
+
+    /**
+     * Records that tile i is safe or a bomb and queues the constraints around it.
+     *
+     * @param i index of a hidden, unknown tile
+     * @param mine true if the tile is a bomb, false if it's safe
+     */
+    private void mark(int i, boolean mine) {
+        if (mine) {
+            set(mines, i);
+            knownMines++;
+        } else {
+            set(safe, i);
+            knownSafe++;
+            if (safeTail == safeList.length) {
+                if (safeHead > 0) { // make room by dropping tiles already handed out
+                    System.arraycopy(safeList, safeHead, safeList, 0, safeTail - safeHead);
+                    safeTail -= safeHead;
+                    safeHead = 0;
+                }
+                if (safeTail == safeList.length) {
+                    safeList = Arrays.copyOf(safeList, safeList.length * 2);
+                }
+            }
+            safeList[safeTail++] = i;
+        }
+        deductions++;
+        int cx = i % width;
+        int cy = i / width;
+        for (int k = 0; k < 8; k++) {
+            int nx = cx + DX[k];
+            int ny = cy + DY[k];
+            if (nx >= 0 && nx < width && ny >= 0 && ny < height) {
+                int n = ny * width + nx;
+                if (has(frontier, n)) {
+                    enqueue(n);
+                }
+            }
+        }
+    }
+
+    /**
+     * Queues tile i to be examined, unless it's already queued.
+     */
+    private void enqueue(int i) {
+        if (has(queued, i)) {
+            return;
+        }
+        set(queued, i);
+        if (workSize == work.length) {
+            work = Arrays.copyOf(work, work.length * 2);
+        }
+        work[workSize++] = i;
+    }
+
+    /**
+     * @return true if tile i is revealed on the board
+     */
+    private boolean isRevealed(int i) {
+        return ms.getCell(i % width, i / width) >= 0;
+    }
+
+    private static boolean has(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    private static void set(long[] bits, int i) {
+        bits[i >>> 6] |= 1L << i;
+    }
+
+    private static void clear(long[] bits, int i) {
+        bits[i >>> 6] &= ~(1L << i);
+    }
+}
@@ -0,0 +1,1137 @@
+package org.cis120.minesweeper;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.swing.JButton;
+import javax.swing.JScrollPane;
+import javax.swing.JViewport;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Tests for the Minesweeper model.
+ */
+
+public class GameTest {
+
+    /**
+     * Creates a game that doesn't write any save files.
+     */
+    private static Minesweeper newGame(int width, int height, int numMines, long seed) {
+        Minesweeper ms = new Minesweeper(width, height, numMines, seed);
+        ms.setSavePath(null);
+        return ms;
+    }
+
+    /**
+     * Counts the bombs on the board.
+     */
+    private static int countBombs(Minesweeper ms) {
+        int mines = 0;
+        for (int y = 0; y < ms.getHeight(); y++) {
+            for (int x = 0; x < ms.getWidth(); x++) {
+                if (ms.isBomb(x, y)) {
+                    mines++;
+                }
+            }
+        }
+        return mines;
+    }
+
+    /**
+     * Makes a sprite for each kind of tile, each a different solid color.
+     */
+    private static Image[] solidSprites() {
+        Image[] sprites = new Image[BoardRenderer.TILE_COUNT];
+        for (int t = 0; t < sprites.length; t++) {
+            BufferedImage img = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+            Graphics g = img.getGraphics();
+            g.setColor(new Color(t * 18, 255 - t * 18, t * 7));
+            g.fillRect(0, 0, 16, 16);
+            g.dispose();
+            sprites[t] = img;
+        }
+        return sprites;
+    }
+
+    /**
+     * Plays a game by revealing tiles in row-major order, skipping bombs after the first move,
+     * and returns a fingerprint of the final board and state.
+     */
+    private static long playGame(Minesweeper ms) {
+        ms.playTurn(ms.getWidth() / 2, ms.getHeight() / 2, true);
+        for (int y = 0; y < ms.getHeight() && ms.getState() == 0; y++) {
+            for (int x = 0; x < ms.getWidth() && ms.getState() == 0; x++) {
+                if (ms.isBomb(x, y)) {
+                    if ((x + y) % 3 == 0) {
+                        ms.playTurn(x, y, false);
+                    }
+                } else {
+                    ms.playTurn(x, y, true);
+                }
+            }
+        }
+        long hash = ms.getState();
+        for (int y = 0; y < ms.getHeight(); y++) {
+            for (int x = 0; x < ms.getWidth(); x++) {
+                hash = hash * 31 + ms.getCell(x, y);
+            }
+        }
+        return hash * 31 + ms.getMoveCount();
+    }
+
+    @Test
+    public void testBoardConfig() {
+        Minesweeper ms = newGame(30, 16, 99, 1);
+        assertEquals(30, ms.getWidth());
+        assertEquals(16, ms.getHeight());
+        assertEquals(99, ms.getNumMines());
+        assertEquals(99, countBombs(ms));
+        assertEquals(Minesweeper.HIDDEN, ms.getCell(29, 15));
+
+        ms.setBoardConfig(9, 9, 81);
+        assertEquals(9, ms.getWidth());
+        assertEquals(81, countBombs(ms));
+
+        try {
+            ms.setBoardConfig(0, 9, 10);
+            fail("Expected an invalid board size to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            ms.setBoardConfig(9, 9, 82);
+            fail("Expected too many mines to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(9, ms.getWidth()); // a rejected config leaves the board as it was
+    }
+
+    @Test
+    public void testLargeOpeningDoesNotOverflowStack() {
+        Minesweeper ms = newGame(2000, 2000, 1, 3);
+        int x = ms.isBomb(0, 0) || ms.isBomb(1, 0) || ms.isBomb(0, 1) || ms.isBomb(1, 1) ? 1999 : 0;
+        assertTrue(ms.playTurn(x, x, true));
+        assertEquals(1, ms.getState());
+    }
+
+    @Test
+    public void testWinAndLoss() {
+        Minesweeper ms = newGame(9, 9, 10, 5);
+        playGame(ms);
+        assertEquals(1, ms.getState());
+
+        ms.reset(false);
+        assertEquals(0, ms.getState());
+        // reveal a safe tile next to a bomb, which uncovers only that tile, then the bomb
+        for (int i = 0; i < 81 && ms.getState() == 0; i++) {
+            int x = i % 9;
+            int y = i / 9;
+            if (x + 1 < 9 && !ms.isBomb(x, y) && ms.isBomb(x + 1, y)) {
+                assertTrue(ms.playTurn(x, y, true));
+                assertEquals(0, ms.getState());
+                assertTrue(ms.playTurn(x + 1, y, true));
+            }
+        }
+        assertEquals(-1, ms.getState());
+    }
+
+    @Test
+    public void testAdjacencyCounts() {
+        Minesweeper ms = newGame(30, 16, 99, 9);
+        playGame(ms);
+        assertEquals(1, ms.getState());
+        for (int y = 0; y < 16; y++) {
+            for (int x = 0; x < 30; x++) {
+                if (ms.isBomb(x, y)) {
+                    continue;
+                }
+                int count = 0;
+                for (int ny = Math.max(0, y - 1); ny <= Math.min(15, y + 1); ny++) {
+                    for (int nx = Math.max(0, x - 1); nx <= Math.min(29, x + 1); nx++) {
+                        if (ms.isBomb(nx, ny)) {
+                            count++;
+                        }
+                    }
+                }
+                assertEquals(count, ms.getCell(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void testSameSeedSameBoard() {
+        Minesweeper a = newGame(30, 16, 99, 1);
+        Minesweeper b = newGame(30, 16, 99, 2);
+        a.resetWithSeed(42);
+        b.resetWithSeed(42);
+        assertEquals(42, a.getSeed());
+        for (int y = 0; y < 16; y++) {
+            for (int x = 0; x < 30; x++) {
+                assertEquals(a.isBomb(x, y), b.isBomb(x, y));
+            }
+        }
+        assertEquals(99, countBombs(a));
+
+        Minesweeper full = newGame(100, 100, 9999, 3); // placement works at any density
+        assertEquals(9999, countBombs(full));
+    }
+
+    @Test
+    public void testFirstRevealIsSafe() {
+        for (long seed = 0; seed < 100; seed++) {
+            Minesweeper ms = newGame(9, 9, 70, seed);
+            ms.setSafeOpening(true);
+            assertTrue(ms.playTurn(4, 4, true));
+            assertEquals(0, ms.getCell(4, 4));
+            assertEquals(0, ms.getState());
+            assertEquals(70, countBombs(ms));
+        }
+    }
+
+    @Test
+    public void testSaveAndLoad(@TempDir Path dir) {
+        String path = dir.resolve("save").toString();
+        Minesweeper ms = new Minesweeper(20, 10, 30, 11);
+        ms.setSavePath(path);
+        ms.playTurn(5, 5, true);
+        ms.playTurn(0, 0, false);
+        ms.flushSave();
+
+        Minesweeper loaded = new Minesweeper(20, 10, 30);
+        loaded.setSavePath(path);
+        assertTrue(loaded.loadGame());
+        assertEquals(ms.getState(), loaded.getState());
+        assertEquals(2, loaded.getMoveCount());
+        for (int y = 0; y < 10; y++) {
+            for (int x = 0; x < 20; x++) {
+                assertEquals(ms.getCell(x, y), loaded.getCell(x, y));
+                assertEquals(ms.isBomb(x, y), loaded.isBomb(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void testSaveIntervalBatchesMoves(@TempDir Path dir) {
+        String path = dir.resolve("save").toString();
+        Minesweeper ms = new Minesweeper(30, 16, 99, 13);
+        ms.setSavePath(path);
+        ms.setSaveInterval(60000);
+        ms.playTurn(15, 8, true);
+        for (int i = 0; i < 50; i++) { // toggling flags saves a move each time
+            ms.playTurn(i % 30, 15, false);
+        }
+        ms.flushSave(); // writes out the moves still waiting on the interval
+
+        Minesweeper loaded = new Minesweeper(30, 16, 99);
+        loaded.setSavePath(path);
+        assertTrue(loaded.loadGame());
+        assertEquals(ms.getMoveCount(), loaded.getMoveCount());
+        for (int y = 0; y < 16; y++) {
+            for (int x = 0; x < 30; x++) {
+                assertEquals(ms.getCell(x, y), loaded.getCell(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void testFullSaveQueueDoesNotBlock(@TempDir Path dir) throws IOException {
+        SaveWorker worker = new SaveWorker(4); // no thread yet, so nothing leaves the queue
+        SaveJournal journal = new SaveJournal(dir.resolve("save").toString());
+        assertTrue(worker.startJournal(journal, 7));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(worker.appendMove(journal, MoveLog.pack(i * 10, true)));
+        }
+        assertFalse(worker.appendMove(journal, MoveLog.pack(99, true))); // full, doesn't wait
+
+        Thread t = new Thread(worker, "minesweeper-save-test");
+        t.setDaemon(true);
+        t.start();
+        worker.sync(journal);
+        t.interrupt();
+        MoveLog moves = journal.readMoves(7, 100);
+        assertEquals(3, moves.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(MoveLog.pack(i * 10, true), moves.get(i));
+        }
+    }
+
+    @Test
+    public void testPackedSnapshot(@TempDir Path dir) {
+        String path = dir.resolve("save").toString();
+        Minesweeper ms = new Minesweeper(101, 37, 500, 17); // rows don't end on a byte boundary
+        ms.setSavePath(path);
+        ms.playTurn(50, 18, true);
+        for (int x = 0; x < 101; x += 3) {
+            ms.playTurn(x, 36, false);
+        }
+        ms.compactSave(); // loading then only needs the snapshot
+        ms.flushSave();
+        // 1 bit a tile for the bombs and 2 for the tile states, plus the header
+        assertTrue(dir.resolve("save.snap").toFile().length() < 36 + 101 * 37 / 2);
+
+        Minesweeper loaded = new Minesweeper(101, 37, 500);
+        loaded.setSavePath(path);
+        assertTrue(loaded.loadGame());
+        assertEquals(0, loaded.getState());
+        for (int y = 0; y < 37; y++) {
+            for (int x = 0; x < 101; x++) {
+                assertEquals(ms.getCell(x, y), loaded.getCell(x, y));
+                assertEquals(ms.isBomb(x, y), loaded.isBomb(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void testLegacySaveIsMigrated(@TempDir Path dir) throws IOException {
+        Minesweeper ms = newGame(12, 8, 15, 19);
+        ms.playTurn(6, 4, true);
+        ms.playTurn(0, 0, false);
+        // the text format used before the journal: state, board size, the tiles as getCell shows
+        // them, the bombs, then one move a line
+        StringBuilder text = new StringBuilder(ms.getState() + "\n12 8 15\n");
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 12; x++) {
+                text.append(ms.getCell(x, y)).append(' ');
+            }
+            text.append('\n');
+        }
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 12; x++) {
+                text.append(ms.isBomb(x, y) ? 1 : 0).append(' ');
+            }
+            text.append('\n');
+        }
+        text.append("6 4 1\n0 0 0\n");
+        Files.write(dir.resolve("save.txt"), text.toString().getBytes());
+
+        String path = dir.resolve("save").toString();
+        Minesweeper loaded = new Minesweeper(12, 8, 15);
+        loaded.setSavePath(path);
+        assertTrue(loaded.loadGame());
+        assertEquals(2, loaded.getMoveCount());
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 12; x++) {
+                assertEquals(ms.getCell(x, y), loaded.getCell(x, y));
+                assertEquals(ms.isBomb(x, y), loaded.isBomb(x, y));
+            }
+        }
+
+        loaded.flushSave(); // the next save writes the game out in the binary format
+        assertTrue(Files.exists(dir.resolve("save.snap")));
+        Minesweeper again = new Minesweeper(12, 8, 15);
+        again.setSavePath(path);
+        assertTrue(again.loadGame());
+        assertEquals(2, again.getMoveCount());
+        assertEquals(ms.getCell(0, 0), again.getCell(0, 0));
+    }
+
+    @Test
+    public void testBadLegacySavesAreRejected(@TempDir Path dir) throws IOException {
+        Minesweeper ms = newGame(4, 3, 2, 23);
+        ms.playTurn(0, 0, false);
+        ms.setSavePath(dir.resolve("save").toString()); // nothing saved yet, just the text file
+        String good = "0\n4 3 2\n" + "-1 -1 -1 -1\n-1 -1 -1 -1\n-1 -1 -1 -1\n" +
+                "1 0 0 0\n0 0 0 0\n0 0 0 1\n";
+        String[] bad = {
+            "1\n4 3 2\n-1 -1 -1 -1\n", // cut off, and the state must not be kept
+            "0\n4 3 2\n-1 -1 x -1\n-1 -1 -1 -1\n-1 -1 -1 -1\n", // not a number
+            "7\n4 3 2\n", // not a game state
+            good + "9 0 1\n", // move off the board
+        };
+        for (String text : bad) {
+            Files.write(dir.resolve("save.txt"), text.getBytes());
+            assertFalse(ms.loadGame());
+            assertEquals(0, ms.getState());
+            assertEquals(1, ms.getMoveCount());
+            assertEquals(Minesweeper.FLAG, ms.getCell(0, 0));
+        }
+
+        Files.write(dir.resolve("save.txt"), (good + "1 1 1\n").getBytes());
+        assertTrue(ms.loadGame());
+        assertEquals(1, ms.getMoveCount()); // replaces the game's moves rather than adding to them
+        assertEquals(Minesweeper.HIDDEN, ms.getCell(0, 0));
+        assertTrue(ms.isBomb(0, 0));
+        assertTrue(ms.isBomb(3, 2));
+    }
+
+    @Test
+    public void testCorruptSnapshotIsRejected(@TempDir Path dir) throws IOException {
+        String path = dir.resolve("save").toString();
+        Minesweeper ms = new Minesweeper(9, 9, 10, 23);
+        ms.setSavePath(path);
+        ms.playTurn(4, 4, true);
+        ms.flushSave();
+
+        Path snap = dir.resolve("save.snap");
+        byte[] bytes = Files.readAllBytes(snap);
+        ByteBuffer.wrap(bytes).putInt(32, -1); // number of moves covered
+        Files.write(snap, bytes);
+        Minesweeper loaded = new Minesweeper(9, 9, 10);
+        loaded.setSavePath(path);
+        assertFalse(loaded.loadGame());
+    }
+
+    @Test
+    public void testJournalMoveOffBoardIsRejected(@TempDir Path dir) throws IOException {
+        String path = dir.resolve("save").toString();
+        Minesweeper ms = new Minesweeper(9, 9, 10, 23);
+        ms.setSavePath(path);
+        ms.playTurn(4, 4, true);
+        ms.flushSave();
+
+        ByteArrayOutputStream tail = new ByteArrayOutputStream();
+        MoveLog.writeDelta(new DataOutputStream(tail), MoveLog.pack(40, true),
+            MoveLog.pack(9 * 9 + 5, true)); // past the last tile
+        Files.write(dir.resolve("save.log"), tail.toByteArray(), StandardOpenOption.APPEND);
+
+        Minesweeper loaded = new Minesweeper(9, 9, 10, 5);
+        loaded.playTurn(0, 0, true);
+        loaded.playTurn(8, 8, false);
+        int[] before = new int[81];
+        for (int i = 0; i < 81; i++) {
+            before[i] = loaded.getCell(i % 9, i / 9);
+        }
+        int state = loaded.getState();
+        int moves = loaded.getMoveCount();
+        loaded.setSavePath(path); // after playing, so it hasn't saved over the tampered journal
+        assertFalse(loaded.loadGame());
+        for (int i = 0; i < 81; i++) {
+            assertEquals(before[i], loaded.getCell(i % 9, i / 9));
+        }
+        assertEquals(state, loaded.getState());
+        assertEquals(moves, loaded.getMoveCount());
+    }
+
+    @Test
+    public void testReplaySeek() {
+        Minesweeper ms = newGame(16, 16, 40, 7);
+        ms.setReplayCheckpointInterval(4);
+        playGame(ms);
+        int[] end = new int[256];
+        for (int i = 0; i < 256; i++) {
+            end[i] = ms.getCell(i % 16, i / 16);
+        }
+
+        ms.reset(true);
+        ms.startReplay();
+        ms.replaySeek(ms.getMoveCount());
+        ms.replaySeek(3);
+        assertEquals(3, ms.getReplayMove());
+        ms.replayStepBackward();
+        assertEquals(2, ms.getReplayMove());
+        ms.finishReplay();
+        for (int i = 0; i < 256; i++) {
+            assertEquals(end[i], ms.getCell(i % 16, i / 16));
+        }
+    }
+
+    @Test
+    public void testGamesAreIndependent() {
+        Minesweeper a = newGame(9, 9, 10, 1);
+        Minesweeper b = newGame(9, 9, 10, 2);
+        playGame(a);
+        assertEquals(1, a.getState());
+        assertEquals(0, b.getState());
+        b.reset(true);
+        b.startReplay();
+        assertEquals(1, a.getState());
+        assertEquals(0, a.getReplayMove());
+    }
+
+    @Test
+    public void testSimulatorIsDeterministic() {
+        Simulator sim = new Simulator(9, 9, 10);
+        Simulator.Results r = sim.run(300, 2, 42);
+        assertEquals(300, r.getGames());
+        assertTrue(r.getWins() > 0 && r.getWins() < r.getGames()); // a few games are lost
+        assertEquals((double) r.getWins() / r.getGames(), r.getWinRate());
+        assertTrue(r.getAverageMoves() >= 1);
+        assertTrue(r.getAverageGuesses() >= 1); // the opening move is always a guess
+
+        Simulator.Results again = sim.run(300, 2, 42);
+        assertEquals(r.getGames(), again.getGames());
+        assertEquals(r.getWins(), again.getWins());
+        assertEquals(r.getAverageMoves(), again.getAverageMoves());
+        assertEquals(r.getAverageGuesses(), again.getAverageGuesses());
+        assertEquals(r.getAverageRevealSize(), again.getAverageRevealSize());
+    }
+
+    @Test
+    public void testSolverDeductionsAreCorrect() {
+        for (long seed = 0; seed < 200; seed++) {
+            Minesweeper ms = newGame(30, 16, 99, seed);
+            Solver solver = new Solver(ms);
+            int x = 15;
+            int y = 8;
+            while (ms.playTurn(x, y, true) && ms.getState() == 0) {
+                solver.update(x, y);
+                solver.deduce();
+                for (int i = 0; i < 30 * 16; i++) {
+                    assertFalse(solver.isMine(i % 30, i / 30) && !ms.isBomb(i % 30, i / 30));
+                    assertFalse(solver.isSafe(i % 30, i / 30) && ms.isBomb(i % 30, i / 30));
+                }
+                int next = solver.nextSafe();
+                if (next < 0) {
+                    break;
+                }
+                x = next % 30;
+                y = next / 30;
+            }
+            assertNotEquals(-1, ms.getState());
+        }
+    }
+
+    @Test
+    public void testProbabilitiesMatchBruteForce() {
+        final int size = 4;
+        final int mines = 4;
+        for (long seed = 0; seed < 100; seed++) {
+            Minesweeper ms = newGame(size, size, mines, seed);
+            Solver solver = new Solver(ms);
+            ProbabilityEngine engine = new ProbabilityEngine(ms, solver);
+            int x = 1;
+            int y = 1;
+            while (ms.playTurn(x, y, true) && ms.getState() == 0) {
+                solver.update(x, y);
+                engine.compute();
+
+                // count the bomb layouts that agree with every revealed number
+                double[] bombs = new double[size * size];
+                double layouts = 0;
+                for (int layout = 0; layout < 1 << (size * size); layout++) {
+                    if (Integer.bitCount(layout) == mines && agrees(ms, layout)) {
+                        layouts++;
+                        for (int i = 0; i < size * size; i++) {
+                            bombs[i] += (layout >> i) & 1;
+                        }
+                    }
+                }
+                for (int i = 0; i < size * size; i++) {
+                    if (ms.getCell(i % size, i / size) < 0) {
+                        assertEquals(bombs[i] / layouts, engine.getProbability(i % size,
+                                i / size), 1e-9);
+                    }
+                }
+                int next = engine.getBestGuess();
+                x = next % size;
+                y = next / size;
+            }
+        }
+    }
+
+    /**
+     * Checks whether a bomb layout (bit y * width + x) agrees with the revealed tiles of a game.
+     */
+    private static boolean agrees(Minesweeper ms, int layout) {
+        int w = ms.getWidth();
+        int h = ms.getHeight();
+        for (int i = 0; i < w * h; i++) {
+            int cell = ms.getCell(i % w, i / w);
+            if (cell < 0) {
+                continue;
+            }
+            int count = 0;
+            for (int y = Math.max(0, i / w - 1); y <= Math.min(h - 1, i / w + 1); y++) {
+                for (int x = Math.max(0, i % w - 1); x <= Math.min(w - 1, i % w + 1); x++) {
+                    count += (layout >> (y * w + x)) & 1;
+                }
+            }
+            if (((layout >> i) & 1) != 0 || count != cell) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    public void testNoGuessBoardsAreSolvable() {
+        for (long seed = 0; seed < 20; seed++) {
+            Minesweeper ms = newGame(30, 16, 99, seed);
+            ms.setNoGuess(true);
+            ms.reset(false);
+            Minesweeper again = newGame(30, 16, 99, seed);
+            again.setNoGuess(true);
+            again.reset(false);
+            assertEquals(ms.getSeed(), again.getSeed());
+
+            Solver solver = new Solver(ms);
+            ProbabilityEngine engine = new ProbabilityEngine(ms, solver);
+            int i = ms.getStartTile();
+            assertNotEquals(-1, i);
+            while (ms.playTurn(i % 30, i / 30, true) && ms.getState() == 0) {
+                solver.update(i % 30, i / 30);
+                solver.deduce();
+                i = solver.nextSafe();
+                if (i < 0) {
+                    engine.compute();
+                    i = engine.getBestGuess();
+                    assertEquals(0, engine.getProbability(i % 30, i / 30));
+                }
+            }
+            assertEquals(1, ms.getState());
+        }
+    }
+
+    @Test
+    public void testNoGuessStartTileIsOutlined() {
+        Image[] sprites = solidSprites();
+        Minesweeper ms = newGame(16, 16, 40, 3);
+        ms.setNoGuess(true);
+        ms.reset(false);
+        int start = ms.getStartTile();
+        assertNotEquals(-1, start);
+        final BoardRenderer renderer = new BoardRenderer(sprites, 8);
+        ms.addBoardListener(new BoardListener() {
+            @Override
+            public void boardChanged(ChangeSet changes) {
+                renderer.invalidate(changes);
+            }
+        });
+        BufferedImage screen = new BufferedImage(128, 128, BufferedImage.TYPE_INT_RGB);
+        renderer.paint(screen.getGraphics(), ms, null);
+        int sx = start % 16 * 8;
+        int sy = start / 16 * 8;
+        assertEquals(start, renderer.getStartShown());
+        assertNotEquals(screen.getRGB(sx + 8, sy + 8), screen.getRGB(sx, sy));
+        assertEquals(screen.getRGB(sx + 4, sy + 4), screen.getRGB(sx + 12, sy + 12));
+
+        int i = 0; // the first reveal elsewhere takes the outline away
+        while (i == start || ms.isBomb(i % 16, i / 16)) {
+            i++;
+        }
+        ms.playTurn(i % 16, i / 16, true);
+        Graphics g = screen.getGraphics();
+        g.setClip(sx, sy, 8, 8); // as GameBoard repaints it
+        renderer.paint(g, ms, g.getClipBounds());
+        g.setClip(i % 16 * 8, i / 16 * 8, 8, 8);
+        renderer.paint(g, ms, g.getClipBounds());
+        g.dispose();
+        assertEquals(-1, renderer.getStartShown());
+        BufferedImage expected = new BufferedImage(128, 128, BufferedImage.TYPE_INT_RGB);
+        new BoardRenderer(sprites, 8).paint(expected.getGraphics(), ms, null);
+        assertEquals(expected.getRGB(sx, sy), screen.getRGB(sx, sy));
+        assertEquals(expected.getRGB(sx + 4, sy + 4), screen.getRGB(sx + 4, sy + 4));
+    }
+
+    @Test
+    public void testBackgroundGamesAreNotRecorded() {
+        GameMetrics metrics = GameMetrics.get();
+        boolean wasEnabled = metrics.isEnabled();
+        metrics.setEnabled(true);
+        try {
+            long moves = metrics.getMoveNanos().getCount();
+            long fills = metrics.getFloodFillNanos().getCount();
+            Minesweeper ms = newGame(16, 16, 40, 8);
+            ms.setNoGuess(true);
+            ms.resetWithSeed(8); // plays candidate boards through to find a no-guess one
+            assertNotEquals(-1, ms.getStartTile());
+            new Simulator(9, 9, 10).run(20, 1, 8);
+            assertEquals(moves, metrics.getMoveNanos().getCount());
+            assertEquals(fills, metrics.getFloodFillNanos().getCount());
+
+            ms.playTurn(ms.getStartTile() % 16, ms.getStartTile() / 16, true);
+            assertEquals(moves + 1, metrics.getMoveNanos().getCount()); // the player's move is
+        } finally {
+            metrics.setEnabled(wasEnabled);
+        }
+    }
+
+    @Test
+    public void testBoardPoolHandsOutReadyBoards() throws InterruptedException {
+        Minesweeper ms = newGame(17, 13, 31, 1);
+        ms.setNoGuess(true);
+        ms.setUseBoardPool(true);
+        BoardPool pool = BoardPool.get();
+        for (int wait = 0; wait < 500 && pool.getReady(17, 13, 31, true) == 0; wait++) {
+            Thread.sleep(10);
+        }
+        long hits = pool.getHits();
+        ms.reset(false);
+        assertEquals(hits + 1, pool.getHits());
+        assertEquals(pool.getHits(), GameMetrics.get().getPoolHits());
+        assertEquals(pool.getMisses(), GameMetrics.get().getPoolMisses());
+
+        int mines = 0;
+        for (int i = 0; i < 17 * 13; i++) {
+            assertEquals(Minesweeper.HIDDEN, ms.getCell(i % 17, i / 17));
+            mines += ms.isBomb(i % 17, i / 17) ? 1 : 0;
+        }
+        assertEquals(31, mines);
+        int start = ms.getStartTile();
+        assertTrue(ms.playTurn(start % 17, start / 17, true));
+        assertEquals(0, ms.getCell(start % 17, start / 17));
+    }
+
+    @Test
+    public void testChangeSetsMatchBoard() {
+        Minesweeper ms = newGame(16, 16, 40, 9);
+        final List<ChangeSet> seen = new ArrayList<>();
+        ms.addBoardListener(new BoardListener() {
+            @Override
+            public void boardChanged(ChangeSet changes) {
+                seen.add(changes);
+            }
+        });
+        int[] view = new int[256];
+        Arrays.fill(view, Minesweeper.HIDDEN);
+        ms.playTurn(0, 0, false); // flag and un-flag
+        ms.playTurn(0, 0, false);
+        ms.playTurn(8, 8, true);
+        for (int i = 0; i < 256 && ms.getState() == 0; i++) {
+            ms.playTurn(i % 16, i / 16, !ms.isBomb(i % 16, i / 16));
+        }
+        assertTrue(seen.size() > 2);
+        for (ChangeSet c : seen) {
+            assertFalse(c.isFull());
+            for (int k = 0; k < c.size(); k++) {
+                assertNotEquals(view[c.getIndex(k)], c.getValue(k));
+                view[c.getIndex(k)] = c.getValue(k);
+            }
+        }
+        for (int i = 0; i < 256; i++) {
+            assertEquals(ms.getCell(i % 16, i / 16), view[i]);
+        }
+        assertTrue(seen.get(seen.size() - 1).isStateChanged());
+        assertEquals(1, ms.getLastChanges().getNewState());
+
+        ms.reset(false);
+        assertTrue(seen.get(seen.size() - 1).isFull());
+    }
+
+    @Test
+    public void testRendererOnlyRedrawsChanges() {
+        Image[] sprites = solidSprites();
+        Minesweeper ms = newGame(20, 12, 30, 4);
+        final BoardRenderer renderer = new BoardRenderer(sprites, 8);
+        ms.addBoardListener(new BoardListener() {
+            @Override
+            public void boardChanged(ChangeSet changes) {
+                renderer.invalidate(changes);
+            }
+        });
+        BufferedImage screen = new BufferedImage(160, 96, BufferedImage.TYPE_INT_RGB);
+        renderer.paint(screen.getGraphics(), ms, null);
+
+        for (int i = 0; i < 240 && ms.getState() == 0; i += 7) {
+            ms.playTurn(i % 20, i / 20, !ms.isBomb(i % 20, i / 20));
+            ChangeSet c = ms.getLastChanges();
+            Graphics g = screen.getGraphics();
+            for (int k = 0; k < c.size(); k++) { // only paint over the changed tiles
+                g.setClip(c.getX(k) * 8, c.getY(k) * 8, 8, 8);
+                renderer.paint(g, ms, g.getClipBounds());
+            }
+            g.dispose();
+
+            BufferedImage expected = new BufferedImage(160, 96, BufferedImage.TYPE_INT_RGB);
+            new BoardRenderer(sprites, 8).paint(expected.getGraphics(), ms, null);
+            for (int y = 0; y < 96; y++) {
+                for (int x = 0; x < 160; x++) {
+                    assertEquals(expected.getRGB(x, y), screen.getRGB(x, y));
+                }
+            }
+        }
+    }
+
+    /**
+     * Paints a 160x96 view of the board with its top left corner at (x, y) on the board.
+     */
+    private static BufferedImage paintView(BoardRenderer renderer, Minesweeper ms, int x, int y) {
+        BufferedImage view = new BufferedImage(160, 96, BufferedImage.TYPE_INT_RGB);
+        Graphics g = view.getGraphics();
+        g.translate(-x, -y);
+        g.setClip(x, y, 160, 96);
+        renderer.paint(g, ms, g.getClipBounds());
+        g.dispose();
+        return view;
+    }
+
+    @Test
+    public void testRendererBuffersPartOfLargeBoards() {
+        Image[] sprites = solidSprites();
+        Minesweeper ms = newGame(300, 300, 9000, 5); // 2400x2400 pixels, too big to buffer whole
+        final BoardRenderer renderer = new BoardRenderer(sprites, 8);
+        ms.addBoardListener(new BoardListener() {
+            @Override
+            public void boardChanged(ChangeSet changes) {
+                renderer.invalidate(changes);
+            }
+        });
+        int[][] views = {{0, 0}, {40, 24}, {1200, 1600}, {1204, 1600}, {0, 0}};
+        for (int v = 0; v < views.length; v++) {
+            int vx = views[v][0];
+            int vy = views[v][1];
+            paintView(renderer, ms, vx, vy);
+            Rectangle tiles = renderer.getBufferTiles();
+            assertTrue(tiles.contains(new Rectangle(vx / 8, vy / 8, 20, 12)));
+            assertTrue(tiles.width * tiles.height < 300 * 300);
+
+            for (int i = 0; i < 40 && ms.getState() == 0; i++) { // moves in and around the view
+                int x = vx / 8 + (i * 7) % 30;
+                int y = vy / 8 + (i * 5) % 18;
+                ms.playTurn(x, y, !ms.isBomb(x, y));
+            }
+            if (v == 3) {
+                renderer.invalidateAll(); // only the tiles painted next get redrawn
+                BufferedImage tile = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+                Graphics g = tile.getGraphics();
+                g.translate(-vx, -vy);
+                g.setClip(vx, vy, 8, 8);
+                renderer.paint(g, ms, g.getClipBounds());
+                g.dispose();
+            }
+            BufferedImage screen = paintView(renderer, ms, vx, vy);
+            BufferedImage expected = paintView(new BoardRenderer(sprites, 8), ms, vx, vy);
+            for (int y = 0; y < 96; y++) {
+                for (int x = 0; x < 160; x++) {
+                    assertEquals(expected.getRGB(x, y), screen.getRGB(x, y));
+                }
+            }
+        }
+    }
+
+    /**
+     * Right-clicks the board at a point in board coordinates, as the mouse would.
+     */
+    private static void rightClick(GameBoard board, int x, int y) {
+        board.dispatchEvent(new MouseEvent(board, MouseEvent.MOUSE_RELEASED,
+                System.currentTimeMillis(), 0, x, y, 1, false, MouseEvent.BUTTON3));
+    }
+
+    @Test
+    public void testZoomKeepsTileUnderMouse() {
+        Minesweeper ms = newGame(40, 30, 100, 6);
+        GameBoard board = new GameBoard(ms);
+        board.setStatus(new JButton());
+        JViewport viewport = new JScrollPane(board).getViewport();
+        viewport.setSize(320, 240);
+        board.setSize(board.getPreferredSize());
+        viewport.setViewPosition(new Point(64, 96));
+
+        Point anchor = new Point(64 + 100, 96 + 50); // under the mouse, at (100, 50) in the view
+        board.zoom(64, anchor);
+        assertEquals(64, board.getTileLen());
+        assertEquals(new Dimension(40 * 64, 30 * 64), board.getPreferredSize());
+        Point view = viewport.getViewPosition();
+        assertEquals(new Point(anchor.x * 2 - 100, anchor.y * 2 - 50), view);
+
+        // the mouse is still over tile (5, 4), where it was before zooming
+        rightClick(board, view.x + 100, view.y + 50);
+        assertEquals(Minesweeper.FLAG, ms.getCell(5, 4));
+        rightClick(board, 7 * 64 - 1, 9 * 64); // last pixel of column 6, first of row 9
+        assertEquals(Minesweeper.FLAG, ms.getCell(6, 9));
+        assertEquals(2, ms.getMoveCount());
+
+        board.zoom(1, null); // clamped to the smallest size
+        assertEquals(GameBoard.MIN_TILE_LEN, board.getTileLen());
+        rightClick(board, 5 * 8 + 7, 4 * 8); // un-flags (5, 4) again
+        assertEquals(Minesweeper.HIDDEN, ms.getCell(5, 4));
+    }
+
+    @Test
+    public void testStartupLoadsSavedGame(@TempDir Path dir) {
+        String path = dir.resolve("save").toString();
+        Minesweeper ms = new Minesweeper(Minesweeper.GRID_WIDTH, Minesweeper.GRID_HEIGHT,
+                Minesweeper.NUM_MINES, 12); // the size the game window starts with
+        ms.setSavePath(path);
+        ms.playTurn(5, 5, true);
+        ms.playTurn(0, 0, false);
+        ms.flushSave();
+
+        Minesweeper loaded = new RunMinesweeper(path).loadedGame(); // loaded in the background
+        Minesweeper expected = new Minesweeper();
+        expected.setSavePath(path);
+        assertTrue(expected.loadGame());
+        assertEquals(ms.getMoveCount(), loaded.getMoveCount());
+        assertEquals(expected.getWidth(), loaded.getWidth());
+        assertEquals(expected.getHeight(), loaded.getHeight());
+        assertEquals(expected.getState(), loaded.getState());
+        assertEquals(expected.getMoveCount(), loaded.getMoveCount());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getCell(x, y), loaded.getCell(x, y));
+                assertEquals(expected.isBomb(x, y), loaded.isBomb(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void testMetricsHistograms() {
+        Histogram h = new Histogram();
+        for (long v = 1; v <= 100000; v++) {
+            h.record(v * 37);
+        }
+        HistogramSnapshot s = h.snapshot();
+        assertEquals(100000, s.getCount());
+        assertEquals(37 * 100000, s.getMax());
+        assertEquals(37 * 50000.5, s.getMean(), 1e-6);
+        assertEquals(37 * 50000, s.getP50(), 37 * 50000 * 0.035);
+        assertEquals(37 * 99000, s.getP99(), 37 * 99000 * 0.035);
+        for (long v : new long[]{0, 1, 63, 64, 65, 1000, 123456789, Long.MAX_VALUE}) {
+            int b = Histogram.bucket(v);
+            assertTrue(Histogram.highestIn(b) >= v);
+            assertTrue(b == 0 || Histogram.highestIn(b - 1) < v);
+        }
+
+        GameMetrics metrics = GameMetrics.get();
+        boolean wasEnabled = metrics.isEnabled();
+        metrics.setEnabled(true);
+        try {
+            long moves = metrics.getMoveNanos().getCount();
+            Minesweeper ms = newGame(16, 16, 1, 3);
+            ms.playTurn(0, 0, true);
+            assertEquals(moves + 1, metrics.getMoveNanos().getCount());
+        } finally {
+            metrics.setEnabled(wasEnabled);
+        }
+    }
+
+    @Test
+    public void testFlightRecorderEvents(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("game.jfr");
+        int moves = 0;
+        try (Recording recording = new Recording()) {
+            recording.enable("org.cis120.minesweeper.Move");
+            recording.enable("org.cis120.minesweeper.FloodFill");
+            recording.enable("org.cis120.minesweeper.StateChange");
+            recording.start();
+            Minesweeper ms = newGame(16, 16, 40, 6);
+            for (int i = 0; i < 256 && ms.getState() == 0; i++) {
+                if (ms.playTurn(i % 16, i / 16, !ms.isBomb(i % 16, i / 16))) {
+                    moves++;
+                }
+            }
+            recording.stop();
+            recording.dump(file);
+        }
+        int moveEvents = 0;
+        int revealed = 0;
+        int filled = 0;
+        int stateChanges = 0;
+        for (RecordedEvent e : RecordingFile.readAllEvents(file)) {
+            String name = e.getEventType().getName();
+            if (name.equals("org.cis120.minesweeper.Move")) {
+                moveEvents++;
+                revealed += e.getInt("revealed");
+            } else if (name.equals("org.cis120.minesweeper.FloodFill")) {
+                filled += e.getInt("size");
+            } else if (name.equals("org.cis120.minesweeper.StateChange")) {
+                assertEquals(0, e.getInt("oldState"));
+                assertEquals(1, e.getInt("newState"));
+                stateChanges++;
+            }
+        }
+        assertEquals(moves, moveEvents);
+        assertEquals(256 - 40, revealed);
+        assertEquals(256 - 40, filled);
+        assertEquals(1, stateChanges);
+    }
+
+    @Test
+    public void testReplaySchedulerJumpsToDueMove() {
+        Minesweeper ms = newGame(16, 16, 40, 12);
+        for (int i = 0; i < 256 && ms.getMoveCount() < 40; i += 3) {
+            ms.playTurn(i % 16, i / 16, !ms.isBomb(i % 16, i / 16)); // flag the bombs
+        }
+        int moves = ms.getMoveCount();
+        assertTrue(moves > 12);
+        int state = ms.getState();
+        int[] board = new int[256];
+        for (int i = 0; i < 256; i++) {
+            board[i] = ms.getCell(i % 16, i / 16);
+        }
+
+        final int[] frames = new int[1];
+        final int[] changes = new int[1];
+        ReplayScheduler replayer = new ReplayScheduler(ms, new Runnable() {
+            @Override
+            public void run() {
+                frames[0]++;
+            }
+        });
+        replayer.start();
+        replayer.pause(); // step by hand rather than on the timer
+        assertTrue(replayer.isActive());
+        assertFalse(replayer.isPlaying());
+        ms.addBoardListener(new BoardListener() {
+            @Override
+            public void boardChanged(ChangeSet c) {
+                changes[0]++;
+            }
+        });
+
+        replayer.advance(10.5); // several moves in one frame change the board once
+        assertEquals(10, ms.getReplayMove());
+        assertEquals(1, changes[0]);
+        assertEquals(1, frames[0]);
+        replayer.advance(0.4);
+        assertEquals(10, ms.getReplayMove());
+        assertEquals(1, changes[0]);
+        replayer.advance(0.2);
+        assertEquals(11, ms.getReplayMove());
+
+        replayer.skipToEnd();
+        assertFalse(replayer.isActive());
+        assertEquals(state, ms.getState());
+        assertEquals(moves, ms.getMoveCount());
+        for (int i = 0; i < 256; i++) {
+            assertEquals(board[i], ms.getCell(i % 16, i / 16));
+        }
+
+        replayer.setSpeed(1000);
+        assertEquals(ReplayScheduler.MAX_SPEED, replayer.getSpeed());
+    }
+
+    @Test
+    public void testMoveLogDeltaEncoding() throws IOException {
+        int[] moves = {MoveLog.pack(0, true), MoveLog.pack(1, false), MoveLog.pack(1, true),
+            MoveLog.pack(9999, true), MoveLog.pack(3, false), MoveLog.pack(1 << 28, true)};
+        MoveLog log = new MoveLog(1);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int written = 0;
+        int previous = 0;
+        for (int move : moves) {
+            log.addPacked(move);
+            assertEquals(MoveLog.deltaLength(previous, move),
+                    MoveLog.writeDelta(out, previous, move));
+            written += MoveLog.deltaLength(previous, move);
+            previous = move;
+        }
+        assertEquals(written, bytes.size());
+        assertEquals(3, MoveLog.deltaLength(0, MoveLog.pack(9999, true)));
+
+        ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+        previous = 0;
+        MoveLog.Cursor c = log.cursor(0);
+        for (int move : moves) {
+            assertTrue(c.next());
+            assertEquals(MoveLog.index(move), c.index());
+            assertEquals(MoveLog.isReveal(move), c.isReveal());
+            previous = MoveLog.readDelta(buf, previous);
+            assertEquals(move, previous);
+        }
+        assertFalse(c.next());
+        assertFalse(buf.hasRemaining());
+
+        // a move cut off partway through isn't read, and the buffer is left before it
+        ByteBuffer partial = ByteBuffer.wrap(bytes.toByteArray(), 0, bytes.size() - 1);
+        partial.position(bytes.size() - 5);
+        assertEquals(-1, MoveLog.readDelta(partial, moves[4]));
+        assertEquals(bytes.size() - 5, partial.position());
+    }
+
+    @Test
+    public void testLargestMoveRoundTrips() throws IOException {
+        int last = Minesweeper.MAX_TILES - 1; // the highest tile index a board can have
+        int[] moves = {MoveLog.pack(last, true), MoveLog.pack(0, false), MoveLog.pack(last, false)};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int previous = 0;
+        for (int move : moves) {
+            assertTrue(move >= 0);
+            MoveLog.writeDelta(out, previous, move);
+            previous = move;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+        previous = 0;
+        for (int move : moves) {
+            previous = MoveLog.readDelta(buf, previous);
+            assertEquals(move, previous);
+        }
+        assertEquals(last, MoveLog.index(moves[0]));
+        assertFalse(buf.hasRemaining());
+
+        Minesweeper ms = newGame(9, 9, 10, 1);
+        try {
+            ms.setBoardConfig(1 << 15, 1 << 15, 10); // 2^30 tiles, one too many
+            fail("Expected a board too big for a move to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(9, ms.getWidth());
+    }
+
+    @Test
+    public void testLoadedJournalIsContinued(@TempDir Path dir) {
+        String path = dir.resolve("save").toString();
+        Minesweeper ms = new Minesweeper(30, 16, 99, 7);
+        ms.setSavePath(path);
+        ms.playTurn(15, 8, true);
+        for (int i = 0; i < 300; i++) { // toggling flags saves a move each time
+            ms.playTurn(i % 30, 15, false);
+        }
+        ms.flushSave();
+
+        Minesweeper loaded = new Minesweeper(30, 16, 99);
+        loaded.setSavePath(path);
+        assertTrue(loaded.loadGame());
+        assertEquals(301, loaded.getMoveCount());
+        loaded.playTurn(0, 0, false);
+        loaded.flushSave();
+
+        Minesweeper again = new Minesweeper(30, 16, 99);
+        again.setSavePath(path);
+        assertTrue(again.loadGame());
+        assertEquals(302, again.getMoveCount());
+        for (int y = 0; y < 16; y++) {
+            for (int x = 0; x < 30; x++) {
+                assertEquals(loaded.getCell(x, y), again.getCell(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentGames() throws Exception {
+        final int games = 400;
+        long[] expected = new long[games];
+        for (int g = 0; g < games; g++) {
+            expected[g] = playGame(newGame(24, 24, 60, g));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int g = 0; g < games; g++) {
+                final long seed = g;
+                results.add(pool.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() {
+                        return playGame(newGame(24, 24, 60, seed));
+                    }
+                }));
+            }
+            for (int g = 0; g < games; g++) {
+                assertEquals(expected[g], (long) results.get(g).get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}